@@ -0,0 +1,86 @@
+package com.jobs.benchmark;
+
+import com.jobs.MainApp;
+import com.jobs.websocket.WebSocketServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 启动被测应用，基准测试通过应用中的 WebSocketServer 直接调用 onOpen/onClose 和各推送方法，
+ * 与真实连接走同一套注册表、广播引擎和发送队列
+ * 内嵌 Tomcat 监听随机端口，不影响本机正在运行的服务；关闭离线消息和心跳检测，避免磁盘读写和后台扫描干扰测量；
+ * 日志级别调为 WARN，逐条连接、逐条消息的 INFO 日志不计入测量
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class BenchmarkServer implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+
+    private final WebSocketServer endpoint;
+
+    private final List<MockSession> sessions = new ArrayList<>();
+
+    /**
+     * @param properties 额外的配置，格式与命令行参数相同，如 --websocket.batch.enabled=true
+     */
+    public BenchmarkServer(String... properties) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--websocket.offline.enabled=false",
+                "--websocket.heartbeat.enabled=false"));
+        args.addAll(Arrays.asList(properties));
+        this.context = new SpringApplicationBuilder(MainApp.class).run(args.toArray(new String[0]));
+        this.endpoint = context.getBean(WebSocketServer.class);
+    }
+
+    public WebSocketServer getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 建立一个模拟连接
+     * @param subprotocol 子协议，空字符串表示只收发消息内容文本
+     */
+    public MockSession connect(String username, String subprotocol) {
+        MockSession session = new MockSession(subprotocol);
+        endpoint.onOpen(username, session);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * 建立 count 个用户各一个模拟连接，用户名为 prefix + 序号
+     */
+    public void connect(String prefix, int count, String subprotocol) {
+        for (int i = 0; i < count; i++) {
+            connect(prefix + i, subprotocol);
+        }
+    }
+
+    /**
+     * 已建立的模拟连接写出的消息总数，用于确认推送确实到达了每个会话
+     */
+    public long sentMessages() {
+        long total = 0;
+        for (MockSession session : sessions) {
+            total += session.getSentMessages();
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        for (MockSession session : sessions) {
+            endpoint.onClose(session);
+        }
+        sessions.clear();
+        context.close();
+    }
+}
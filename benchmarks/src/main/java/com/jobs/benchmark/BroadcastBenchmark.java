@@ -0,0 +1,63 @@
+package com.jobs.benchmark;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.MessageType;
+import com.jobs.protocol.WireProtocol;
+import com.jobs.websocket.BroadcastResult;
+import com.jobs.websocket.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广播扇出的开销
+ * sessions 个会话在线时调用一次 sendMessageToAll 并等待所有会话写完，模拟会话的写出立即完成，
+ * 测得的是编码、逐会话入队和完成汇总的开销
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BroadcastBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int sessions;
+
+    //会话协商的子协议：LEGACY 只发送内容文本，BINARY 为二进制信封
+    @Param({"LEGACY", "BINARY"})
+    public String protocol;
+
+    private BenchmarkServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new BenchmarkServer();
+        server.connect("user-", sessions, "BINARY".equals(protocol) ? WireProtocol.BINARY_SUBPROTOCOL : "");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public BroadcastResult sendMessageToAll() {
+        return WebSocketServer.sendMessageToAll(Envelope.of(MessageType.BROADCAST, "【早安推送】早上好！新的一天开始了，祝您工作愉快！")).join();
+    }
+}
@@ -0,0 +1,35 @@
+package com.jobs.benchmark;
+
+import com.jobs.service.ScheduledMessageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时推送消息内容的生成开销（时间格式化和 String.format），每次定时推送和每个用户的每次用户级推送都会执行一次
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFormatBenchmark {
+
+    public int scheduledUserCount = 12345;
+
+    @Benchmark
+    public String formatScheduledMessage() {
+        return ScheduledMessageService.formatScheduledMessage(scheduledUserCount);
+    }
+}
@@ -0,0 +1,279 @@
+package com.jobs.benchmark;
+
+import javax.websocket.CloseReason;
+import javax.websocket.EncodeException;
+import javax.websocket.Extension;
+import javax.websocket.MessageHandler;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基准测试用的 WebSocket 会话，不经过网络
+ * 异步发送在调用线程中立即以成功结果回调，测得的是服务端自身的开销，不包含写出网络的时间
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class MockSession implements Session {
+
+    private static final AtomicLong ID_GENERATOR = new AtomicLong();
+
+    private static final SendResult OK = new SendResult();
+
+    private final String id = Long.toString(ID_GENERATOR.incrementAndGet());
+
+    private final String subprotocol;
+
+    private final Map<String, Object> userProperties = new HashMap<>();
+
+    private final MockAsync asyncRemote = new MockAsync();
+
+    private volatile boolean open = true;
+
+    //已写出的消息数和字节数
+    private long sentMessages;
+
+    private long sentBytes;
+
+    /**
+     * @param subprotocol 协商出的子协议，空字符串表示只收发消息内容文本
+     */
+    public MockSession(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public long getSentMessages() {
+        return sentMessages;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getNegotiatedSubprotocol() {
+        return subprotocol;
+    }
+
+    @Override
+    public List<Extension> getNegotiatedExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public RemoteEndpoint.Async getAsyncRemote() {
+        return asyncRemote;
+    }
+
+    @Override
+    public RemoteEndpoint.Basic getBasicRemote() {
+        throw new UnsupportedOperationException("基准测试只支持异步发送");
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void close(CloseReason closeReason) {
+        open = false;
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestParameterMap() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, String> getPathParameters() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Object> getUserProperties() {
+        return userProperties;
+    }
+
+    @Override
+    public WebSocketContainer getContainer() {
+        return null;
+    }
+
+    @Override
+    public void addMessageHandler(MessageHandler handler) {
+    }
+
+    @Override
+    public <T> void addMessageHandler(Class<T> clazz, MessageHandler.Whole<T> handler) {
+    }
+
+    @Override
+    public <T> void addMessageHandler(Class<T> clazz, MessageHandler.Partial<T> handler) {
+    }
+
+    @Override
+    public Set<MessageHandler> getMessageHandlers() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void removeMessageHandler(MessageHandler handler) {
+    }
+
+    @Override
+    public String getProtocolVersion() {
+        return "13";
+    }
+
+    @Override
+    public boolean isSecure() {
+        return false;
+    }
+
+    @Override
+    public long getMaxIdleTimeout() {
+        return 0;
+    }
+
+    @Override
+    public void setMaxIdleTimeout(long milliseconds) {
+    }
+
+    @Override
+    public void setMaxBinaryMessageBufferSize(int length) {
+    }
+
+    @Override
+    public int getMaxBinaryMessageBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public void setMaxTextMessageBufferSize(int length) {
+    }
+
+    @Override
+    public int getMaxTextMessageBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return null;
+    }
+
+    @Override
+    public String getQueryString() {
+        return null;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    @Override
+    public Set<Session> getOpenSessions() {
+        return Collections.emptySet();
+    }
+
+    private final class MockAsync implements RemoteEndpoint.Async {
+
+        private long sendTimeout;
+
+        @Override
+        public long getSendTimeout() {
+            return sendTimeout;
+        }
+
+        @Override
+        public void setSendTimeout(long timeout) {
+            this.sendTimeout = timeout;
+        }
+
+        @Override
+        public void sendText(String text, SendHandler handler) {
+            sentMessages++;
+            sentBytes += text.length();
+            handler.onResult(OK);
+        }
+
+        @Override
+        public Future<Void> sendText(String text) {
+            sendText(text, result -> {
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer data, SendHandler handler) {
+            sentMessages++;
+            sentBytes += data.remaining();
+            handler.onResult(OK);
+        }
+
+        @Override
+        public Future<Void> sendBinary(ByteBuffer data) {
+            sendBinary(data, result -> {
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void sendObject(Object data, SendHandler handler) {
+            handler.onResult(new SendResult(new EncodeException(data, "基准测试不支持发送对象")));
+        }
+
+        @Override
+        public Future<Void> sendObject(Object data) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new EncodeException(data, "基准测试不支持发送对象"));
+            return future;
+        }
+
+        @Override
+        public void setBatchingAllowed(boolean allowed) {
+        }
+
+        @Override
+        public boolean getBatchingAllowed() {
+            return false;
+        }
+
+        @Override
+        public void flushBatch() {
+        }
+
+        @Override
+        public void sendPing(ByteBuffer applicationData) {
+        }
+
+        @Override
+        public void sendPong(ByteBuffer applicationData) {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.jobs.benchmark;
+
+import com.jobs.concurrent.PartitionedExecutor;
+import com.jobs.concurrent.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用户级定时任务执行模型对比
+ * 同一时刻到期的 users 个用户任务交给执行器，每个任务模拟一次阻塞 blockMillis 毫秒的发送，测量全部完成的耗时：
+ * SCHEDULER_POOL_1 为原先 ScheduledMessageService 中的单线程 ThreadPoolTaskScheduler，
+ * PARTITIONED 为当前按用户名分区的 PartitionedExecutor（每个 CPU 核心一个分区），
+ * VIRTUAL_THREADS 为 websocket.virtual-threads 开启后每个任务一个虚拟线程的执行器（需要 JDK 21 及以上，低版本 JDK 上该组参数报错跳过）
+ * 运行：java -jar target/benchmarks.jar ScheduledExecutionBenchmark
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScheduledExecutionBenchmark {
+
+    @Param({"SCHEDULER_POOL_1", "PARTITIONED", "VIRTUAL_THREADS"})
+    public String model;
+
+    //同一时刻到期的用户任务数
+    @Param({"100", "1000"})
+    public int users;
+
+    //每次发送阻塞的时间（毫秒），0 表示发送不阻塞，只比较调度开销
+    @Param({"0", "1"})
+    public long blockMillis;
+
+    //PARTITIONED 模型的分区数，0 表示取 CPU 核心数
+    @Param({"0"})
+    public int partitions;
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    private ExecutorService virtualExecutor;
+
+    private PartitionedExecutor partitionedExecutor;
+
+    private Executor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("VIRTUAL_THREADS".equals(model)) {
+            virtualExecutor = VirtualThreads.newThreadPerTaskExecutor("user-schedule-");
+            executor = virtualExecutor;
+        } else if ("PARTITIONED".equals(model)) {
+            //与 JobExecutorConfig 中的默认配置一致，任务按序号分区，模拟按用户名分区
+            int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+            partitionedExecutor = new PartitionedExecutor("job-partition", count, false);
+            AtomicInteger user = new AtomicInteger();
+            executor = task -> partitionedExecutor.execute("userSchedule", user.getAndIncrement(), task);
+        } else {
+            //与 ScheduledMessageService.init() 中的配置一致
+            scheduler = new ThreadPoolTaskScheduler();
+            scheduler.setPoolSize(1);
+            scheduler.setThreadNamePrefix("scheduled-message-");
+            scheduler.initialize();
+            executor = scheduler;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+        if (partitionedExecutor != null) {
+            partitionedExecutor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void fireDueJobs() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(users);
+        for (int i = 0; i < users; i++) {
+            executor.execute(() -> {
+                try {
+                    send();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * 模拟一次阻塞发送，线程在等待期间不占用 CPU
+     */
+    private void send() {
+        if (blockMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(blockMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.jobs.benchmark;
+
+import com.jobs.service.ScheduledMessageService;
+import com.jobs.websocket.BroadcastResult;
+import com.jobs.websocket.UserPage;
+import com.jobs.websocket.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启用了定时任务的用户的查询和推送
+ * sessions 个会话在线，其中 scheduledPercent% 的用户启用了定时任务，
+ * 测量 getScheduledUsers()/getScheduledUserCount() 以及一次完整的定时推送（生成消息内容并推送给所有启用了定时任务的用户）
+ * getScheduledUsers 取第一页，成员没有变化，测量的是复用快照的开销；getOnlineUsersUnchanged 带上当前版本号查询在线用户
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ScheduledUsersBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int sessions;
+
+    @Param({"10"})
+    public int scheduledPercent;
+
+    private BenchmarkServer server;
+
+    private long onlineVersion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new BenchmarkServer();
+        server.connect("user-", sessions, "");
+        int step = Math.max(1, 100 / Math.max(1, scheduledPercent));
+        for (int i = 0; i < sessions; i += step) {
+            WebSocketServer.startUserScheduledTask("user-" + i);
+        }
+        onlineVersion = WebSocketServer.getOnlineUsers(null, 1, null).getVersion();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public UserPage getScheduledUsers() {
+        return WebSocketServer.getScheduledUsers(null, 100, null);
+    }
+
+    @Benchmark
+    public UserPage getOnlineUsersUnchanged() {
+        return WebSocketServer.getOnlineUsers(null, 100, onlineVersion);
+    }
+
+    @Benchmark
+    public int getScheduledUserCount() {
+        return WebSocketServer.getScheduledUserCount();
+    }
+
+    /**
+     * 与 ScheduledMessageService.sendScheduledMessage 的推送过程一致，在当前线程中执行并等待写完
+     */
+    @Benchmark
+    public BroadcastResult sendScheduledMessage() {
+        String message = ScheduledMessageService.formatScheduledMessage(WebSocketServer.getScheduledUserCount());
+        return WebSocketServer.sendMessageToScheduledUsers(message).join();
+    }
+}
@@ -0,0 +1,71 @@
+package com.jobs.benchmark;
+
+import com.jobs.websocket.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接建立/断开的开销
+ * 在已有 onlineSessions 个在线会话的情况下，反复对同一批用户名执行一次 onOpen 和一次 onClose，
+ * 覆盖注册表、设备策略、集群路由表和定时任务开关检查
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class SessionChurnBenchmark {
+
+    //循环使用的用户名数量
+    private static final int USERNAMES = 1024;
+
+    @Param({"0", "10000"})
+    public int onlineSessions;
+
+    private BenchmarkServer server;
+
+    private WebSocketServer endpoint;
+
+    private String[] usernames;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new BenchmarkServer();
+        endpoint = server.getEndpoint();
+        server.connect("online-", onlineSessions, "");
+        usernames = new String[USERNAMES];
+        for (int i = 0; i < USERNAMES; i++) {
+            usernames[i] = "churn-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void openClose() {
+        MockSession session = new MockSession("");
+        endpoint.onOpen(usernames[next++ & (USERNAMES - 1)], session);
+        endpoint.onClose(session);
+    }
+}
@@ -0,0 +1,157 @@
+package com.jobs.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 广播探针
+ * 调用 /test/sendScheduledMessage 触发广播，消息内容为 lg-bc:轮次，
+ * 每个连接收到后按 收到时间 - 请求发出时间 记录送达延迟；收到的连接数达到触发时的在线连接数时记录广播完成时间，
+ * 超时仍未达到的轮次按未全部送达统计
+ * 触发时的在线连接数只是近似值，有连接抖动时期间新建的连接收不到本轮广播
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class BroadcastProbe {
+
+    public static final String BROADCAST_MARKER = "lg-bc:";
+
+    private static final int HTTP_TIMEOUT_MILLIS = 10_000;
+
+    private final String broadcastUrl;
+
+    private final long timeoutNanos;
+
+    private final LoadMetrics metrics;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    //进行中的广播，key 是轮次
+    private final Map<Long, Round> rounds = new ConcurrentHashMap<>();
+
+    public BroadcastProbe(String broadcastUrl, int timeoutSeconds, LoadMetrics metrics) {
+        this.broadcastUrl = broadcastUrl;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 触发一次广播，由广播线程调用
+     */
+    public void trigger() {
+        expire(System.nanoTime());
+        int expected = metrics.getConnected();
+        if (expected == 0) {
+            return;
+        }
+        long seq = sequence.incrementAndGet();
+        Round round = new Round(seq, expected, System.nanoTime());
+        rounds.put(seq, round);
+        metrics.onBroadcastTriggered();
+        try {
+            post("{\"message\":\"" + BROADCAST_MARKER + seq + "\"}");
+        } catch (IOException e) {
+            rounds.remove(seq);
+            log.warn("第 {} 轮广播触发失败：{}", seq, e.getMessage());
+        }
+    }
+
+    private void post(String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(broadcastUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+        connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                while (in.read() >= 0) {
+                    //读完响应，连接可以复用
+                }
+            }
+        }
+        if (status >= 400) {
+            throw new IOException("HTTP " + status);
+        }
+    }
+
+    /**
+     * 连接收到一条消息，识别为广播时记录送达延迟
+     */
+    public void onPayload(String payload, long receivedAt) {
+        int marker = payload.indexOf(BROADCAST_MARKER);
+        if (marker < 0) {
+            return;
+        }
+        long seq = 0;
+        for (int i = marker + BROADCAST_MARKER.length(); i < payload.length() && Character.isDigit(payload.charAt(i)); i++) {
+            seq = seq * 10 + (payload.charAt(i) - '0');
+        }
+        Round round = rounds.get(seq);
+        if (round == null) {
+            return;
+        }
+        metrics.recordDelivery(receivedAt - round.startNanos);
+        if (round.received.incrementAndGet() == round.expected && rounds.remove(seq) != null) {
+            long completion = receivedAt - round.startNanos;
+            metrics.recordBroadcastCompletion(completion);
+            log.info("第 {} 轮广播全部送达 {} 个连接，耗时 {} 毫秒", seq, round.expected, TimeUnit.NANOSECONDS.toMillis(completion));
+        }
+    }
+
+    /**
+     * 清理超时的广播
+     */
+    public void expire(long now) {
+        for (Round round : rounds.values()) {
+            if (now - round.startNanos >= timeoutNanos && rounds.remove(round.seq, round)) {
+                incomplete(round);
+            }
+        }
+    }
+
+    /**
+     * 压测结束，进行中的广播全部按未全部送达统计
+     */
+    public void finish() {
+        for (Round round : rounds.values()) {
+            if (rounds.remove(round.seq, round)) {
+                incomplete(round);
+            }
+        }
+    }
+
+    private void incomplete(Round round) {
+        metrics.onBroadcastIncomplete();
+        log.warn("第 {} 轮广播未全部送达：{}/{}", round.seq, round.received.get(), round.expected);
+    }
+
+    private static final class Round {
+        final long seq;
+        final int expected;
+        final long startNanos;
+        final AtomicInteger received = new AtomicInteger();
+
+        Round(long seq, int expected, long startNanos) {
+            this.seq = seq;
+            this.expected = expected;
+            this.startNanos = startNanos;
+        }
+    }
+}
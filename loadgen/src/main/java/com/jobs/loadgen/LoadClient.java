@@ -0,0 +1,162 @@
+package com.jobs.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个压测连接
+ * 回显消息内容为 lg-echo:发送时间（纳秒），收到服务端回显后计算延迟；同一连接同一时刻只有一条回显在发送，
+ * 上一条还没发完时跳过，避免压测端自身的发送排队计入延迟
+ * 收到的消息交给 BroadcastProbe 识别是否为广播
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class LoadClient extends Endpoint {
+
+    public static final String ECHO_MARKER = "lg-echo:";
+
+    private final String username;
+
+    private final boolean binary;
+
+    private final LoadMetrics metrics;
+
+    private final BroadcastProbe broadcastProbe;
+
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    private final SendHandler echoHandler = this::onEchoSent;
+
+    private volatile Session session;
+
+    //由压测端主动关闭
+    private volatile boolean closing;
+
+    public LoadClient(String username, boolean binary, LoadMetrics metrics, BroadcastProbe broadcastProbe) {
+        this.username = username;
+        this.binary = binary;
+        this.metrics = metrics;
+        this.broadcastProbe = broadcastProbe;
+    }
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        this.session = session;
+        session.addMessageHandler(ByteBuffer.class, (MessageHandler.Whole<ByteBuffer>) this::onBinary);
+        session.addMessageHandler(String.class, (MessageHandler.Whole<String>) this::onPayload);
+        metrics.onConnected();
+    }
+
+    private void onBinary(ByteBuffer frame) {
+        long receivedAt = System.nanoTime();
+        if (!binary) {
+            onPayload(ServerMessageDecoder.decodeText(frame), receivedAt);
+            return;
+        }
+        try {
+            ServerMessageDecoder.decodeBinary(frame, payload -> onPayload(payload, receivedAt));
+        } catch (IllegalArgumentException e) {
+            metrics.onError();
+            log.debug("用户 {} 收到的二进制消息无法解析：{}", username, e.getMessage());
+        }
+    }
+
+    private void onPayload(String payload) {
+        onPayload(payload, System.nanoTime());
+    }
+
+    private void onPayload(String payload, long receivedAt) {
+        metrics.onMessage();
+        int echo = payload.indexOf(ECHO_MARKER);
+        if (echo >= 0) {
+            try {
+                metrics.recordEcho(receivedAt - Long.parseLong(payload.substring(echo + ECHO_MARKER.length()).trim()));
+            } catch (NumberFormatException e) {
+                metrics.onError();
+            }
+            return;
+        }
+        broadcastProbe.onPayload(payload, receivedAt);
+    }
+
+    /**
+     * 发送一条回显消息
+     * @return 是否发出，连接未打开或上一条回显还没发完时返回 false
+     */
+    public boolean echo() {
+        Session current = session;
+        if (current == null || !current.isOpen() || !sending.compareAndSet(false, true)) {
+            return false;
+        }
+        String payload = ECHO_MARKER + System.nanoTime();
+        try {
+            if (binary) {
+                current.getAsyncRemote().sendBinary(ServerMessageDecoder.encodeBinary(payload), echoHandler);
+            } else {
+                current.getAsyncRemote().sendText(payload, echoHandler);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            sending.set(false);
+            metrics.onError();
+            return false;
+        }
+    }
+
+    private void onEchoSent(SendResult result) {
+        sending.set(false);
+        if (!result.isOK()) {
+            metrics.onError();
+        }
+    }
+
+    public boolean isOpen() {
+        Session current = session;
+        return current != null && current.isOpen();
+    }
+
+    /**
+     * 主动关闭连接
+     */
+    public void close() {
+        closing = true;
+        Session current = session;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "loadgen"));
+        } catch (IOException e) {
+            log.debug("关闭用户 {} 的连接失败：{}", username, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        metrics.onClosed(closing);
+        if (!closing) {
+            log.debug("用户 {} 的连接被断开：{}", username, closeReason);
+        }
+    }
+
+    @Override
+    public void onError(Session session, Throwable throwable) {
+        metrics.onError();
+        log.debug("用户 {} 的连接出错：{}", username, throwable.getMessage());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
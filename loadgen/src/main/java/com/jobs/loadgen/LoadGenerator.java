@@ -0,0 +1,249 @@
+package com.jobs.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * WebSocket 压测入口
+ * 按 connect-rate 逐步建立 connections 个连接（用户名为前缀加序号），全部建立后持续 duration 秒：
+ * 所有连接合计每秒发送 echo-rate 条回显消息，每秒断开并重连 churn-rate 个连接，每 broadcast-interval 秒触发一次广播，
+ * 每 report-interval 秒打印一次区间统计，结束时打印全程的延迟分布和广播完成时间
+ * 只允许压测本机回环地址
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class LoadGenerator {
+
+    //驱动线程的节拍（毫秒），回显、抖动、建连按速率折算为每个节拍的次数
+    private static final long TICK_MILLIS = 10;
+
+    //Tomcat WebSocket 客户端的握手和写超时
+    private static final String IO_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.IO_TIMEOUT_MS";
+
+    private static final String BINARY_SUBPROTOCOL = "v1.binary";
+
+    private final LoadOptions options;
+
+    private final List<URI> targets;
+
+    private final LoadMetrics metrics;
+
+    private final BroadcastProbe broadcastProbe;
+
+    private final WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+
+    private final ClientEndpointConfig endpointConfig;
+
+    //每个用户名当前的连接，抖动重连后替换
+    private final AtomicReferenceArray<LoadClient> clients;
+
+    private final CountDownLatch rampLatch;
+
+    private final ExecutorService connectExecutor;
+
+    private final ScheduledExecutorService driverExecutor = Executors.newSingleThreadScheduledExecutor(namedThreads("loadgen-driver"));
+
+    private final ScheduledExecutorService broadcastExecutor = Executors.newSingleThreadScheduledExecutor(namedThreads("loadgen-broadcast"));
+
+    private final ScheduledExecutorService reportExecutor = Executors.newSingleThreadScheduledExecutor(namedThreads("loadgen-report"));
+
+    //下一个要建立的连接序号，只由驱动线程修改
+    private int nextIndex;
+
+    //按速率累计的次数，只由驱动线程修改
+    private double connectCredit;
+
+    private double echoCredit;
+
+    private double churnCredit;
+
+    private volatile boolean rampFinished;
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.targets = options.targets();
+        this.metrics = new LoadMetrics(options.getHistogramLog());
+        this.broadcastProbe = new BroadcastProbe(options.broadcastUrl(), options.getBroadcastTimeout(), metrics);
+        this.clients = new AtomicReferenceArray<>(options.getConnections());
+        this.rampLatch = new CountDownLatch(options.getConnections());
+        this.connectExecutor = Executors.newFixedThreadPool(options.getConnectThreads(), namedThreads("loadgen-connect"));
+        ClientEndpointConfig.Builder builder = ClientEndpointConfig.Builder.create();
+        if (isBinary()) {
+            builder.preferredSubprotocols(Collections.singletonList(BINARY_SUBPROTOCOL));
+        }
+        this.endpointConfig = builder.build();
+        this.endpointConfig.getUserProperties().put(IO_TIMEOUT_PROPERTY, String.valueOf(TimeUnit.SECONDS.toMillis(10)));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+            options.validate();
+        } catch (IllegalArgumentException e) {
+            log.error("{}", e.getMessage());
+            log.error("用法：java -jar loadgen.jar [--url=ws://127.0.0.1:8086/socket] [--hosts=127.0.0.1,127.0.0.2] [--connections=1000] "
+                    + "[--connect-rate=1000] [--protocol=binary|legacy] [--duration=60] [--echo-rate=100] [--churn-rate=0] "
+                    + "[--broadcast-interval=10] [--report-interval=5] [--histogram-log=latency.hlog]");
+            System.exit(1);
+            return;
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws InterruptedException {
+        log.info("开始压测：{}", options);
+        long rampStart = System.nanoTime();
+        driverExecutor.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        reportExecutor.scheduleAtFixedRate(this::report, options.getReportInterval(), options.getReportInterval(), TimeUnit.SECONDS);
+        rampLatch.await();
+        rampFinished = true;
+        log.info("{} 个连接建立完成，成功 {} 个，耗时 {} 毫秒", options.getConnections(), metrics.getConnected(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - rampStart));
+        if (options.getBroadcastInterval() > 0) {
+            broadcastExecutor.scheduleWithFixedDelay(this::broadcast, 0, options.getBroadcastInterval(), TimeUnit.SECONDS);
+        }
+        TimeUnit.SECONDS.sleep(options.getDuration());
+        stop();
+    }
+
+    private void tick() {
+        try {
+            double tickSeconds = TICK_MILLIS / 1000.0;
+            if (nextIndex < options.getConnections()) {
+                connectCredit += options.getConnectRate() * tickSeconds;
+                while (connectCredit >= 1 && nextIndex < options.getConnections()) {
+                    connectCredit--;
+                    int index = nextIndex++;
+                    connectExecutor.execute(() -> connect(index, true));
+                }
+            }
+            echoCredit += options.getEchoRate() * tickSeconds;
+            for (; echoCredit >= 1; echoCredit--) {
+                LoadClient client = randomClient();
+                if (client != null) {
+                    if (client.echo()) {
+                        metrics.onEchoSent();
+                    } else {
+                        metrics.onEchoSkipped();
+                    }
+                }
+            }
+            if (rampFinished) {
+                churnCredit += options.getChurnRate() * tickSeconds;
+                for (; churnCredit >= 1; churnCredit--) {
+                    churn();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("压测驱动出错：{}", e.getMessage(), e);
+        }
+    }
+
+    private LoadClient randomClient() {
+        int limit = Math.min(nextIndex, options.getConnections());
+        if (limit == 0) {
+            return null;
+        }
+        return clients.get(ThreadLocalRandom.current().nextInt(limit));
+    }
+
+    /**
+     * 断开一个连接，再用同一个用户名重新连接
+     */
+    private void churn() {
+        int index = ThreadLocalRandom.current().nextInt(options.getConnections());
+        LoadClient client = clients.getAndSet(index, null);
+        if (client == null) {
+            return;
+        }
+        connectExecutor.execute(() -> {
+            client.close();
+            connect(index, false);
+        });
+    }
+
+    private void connect(int index, boolean ramp) {
+        String username = options.getUsernamePrefix() + index;
+        LoadClient client = new LoadClient(username, isBinary(), metrics, broadcastProbe);
+        URI uri = URI.create(targets.get(index % targets.size()) + "/" + username);
+        try {
+            container.connectToServer(client, endpointConfig, uri);
+            clients.set(index, client);
+        } catch (Exception e) {
+            metrics.onConnectFailure();
+            log.debug("用户 {} 连接失败：{}", username, e.getMessage());
+        } finally {
+            if (ramp) {
+                rampLatch.countDown();
+            }
+        }
+    }
+
+    private void broadcast() {
+        try {
+            broadcastProbe.trigger();
+        } catch (RuntimeException e) {
+            log.error("触发广播出错：{}", e.getMessage(), e);
+        }
+    }
+
+    private void report() {
+        try {
+            broadcastProbe.expire(System.nanoTime());
+            metrics.report();
+        } catch (RuntimeException e) {
+            log.error("打印统计出错：{}", e.getMessage(), e);
+        }
+    }
+
+    private void stop() throws InterruptedException {
+        driverExecutor.shutdownNow();
+        broadcastExecutor.shutdownNow();
+        reportExecutor.shutdownNow();
+        driverExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        broadcastExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        reportExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        //留出时间接收最后一轮广播和回显
+        TimeUnit.SECONDS.sleep(1);
+        broadcastProbe.finish();
+        metrics.summary();
+        connectExecutor.shutdownNow();
+        for (int i = 0; i < clients.length(); i++) {
+            LoadClient client = clients.get(i);
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    private boolean isBinary() {
+        return "binary".equals(options.getProtocol());
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,221 @@
+package com.jobs.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测统计
+ * 延迟记录在 HdrHistogram 的 Recorder 中，记录时不加锁、不分配对象；统计线程每个间隔取出一次区间直方图，
+ * 打印区间的 p50/p99/p999 后累加到全程直方图
+ * 回显延迟为客户端发出到收到回显，广播送达延迟为触发广播的 HTTP 请求发出到各连接收到消息
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class LoadMetrics {
+
+    //可记录的最大延迟，超过的按最大值记录
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final String ECHO_TAG = "echo";
+
+    private static final String DELIVERY_TAG = "delivery";
+
+    private final Recorder echoRecorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final Recorder deliveryRecorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final Histogram echoTotal = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final Histogram deliveryTotal = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    //广播完成时间（最后一个连接收到的时间减去触发时间）
+    private final Histogram broadcastCompletion = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private Histogram echoInterval;
+
+    private Histogram deliveryInterval;
+
+    //当前打开的连接数
+    private final AtomicInteger connected = new AtomicInteger();
+
+    private final LongAdder connects = new LongAdder();
+
+    private final LongAdder connectFailures = new LongAdder();
+
+    //客户端主动断开的次数（连接抖动）
+    private final LongAdder churned = new LongAdder();
+
+    //非客户端主动断开的次数
+    private final LongAdder disconnects = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder echoSent = new LongAdder();
+
+    //上一个回显还没发完而跳过的次数
+    private final LongAdder echoSkipped = new LongAdder();
+
+    private final LongAdder messagesReceived = new LongAdder();
+
+    private final LongAdder broadcastsTriggered = new LongAdder();
+
+    private final LongAdder broadcastsCompleted = new LongAdder();
+
+    private final LongAdder broadcastsIncomplete = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+
+    private final HistogramLogWriter logWriter;
+
+    private final PrintStream logStream;
+
+    public LoadMetrics(String histogramLog) {
+        if (histogramLog == null || histogramLog.isEmpty()) {
+            logStream = null;
+            logWriter = null;
+            return;
+        }
+        try {
+            logStream = new PrintStream(histogramLog);
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("无法写入直方图日志文件：" + histogramLog);
+        }
+        logWriter = new HistogramLogWriter(logStream);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(System.currentTimeMillis());
+        logWriter.setBaseTime(System.currentTimeMillis());
+        logWriter.outputLegend();
+    }
+
+    public void recordEcho(long latencyNanos) {
+        echoRecorder.recordValue(clamp(latencyNanos));
+    }
+
+    public void recordDelivery(long latencyNanos) {
+        deliveryRecorder.recordValue(clamp(latencyNanos));
+    }
+
+    /**
+     * 记录一次广播从触发到全部送达的时间
+     */
+    public void recordBroadcastCompletion(long nanos) {
+        synchronized (broadcastCompletion) {
+            broadcastCompletion.recordValue(clamp(nanos));
+        }
+        broadcastsCompleted.increment();
+    }
+
+    private static long clamp(long nanos) {
+        return Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+    }
+
+    public void onConnected() {
+        connected.incrementAndGet();
+        connects.increment();
+    }
+
+    public void onClosed(boolean churn) {
+        connected.decrementAndGet();
+        if (churn) {
+            churned.increment();
+        } else {
+            disconnects.increment();
+        }
+    }
+
+    public int getConnected() {
+        return connected.get();
+    }
+
+    public void onConnectFailure() {
+        connectFailures.increment();
+    }
+
+    public void onError() {
+        errors.increment();
+    }
+
+    public void onEchoSent() {
+        echoSent.increment();
+    }
+
+    public void onEchoSkipped() {
+        echoSkipped.increment();
+    }
+
+    public void onMessage() {
+        messagesReceived.increment();
+    }
+
+    public void onBroadcastTriggered() {
+        broadcastsTriggered.increment();
+    }
+
+    public void onBroadcastIncomplete() {
+        broadcastsIncomplete.increment();
+    }
+
+    /**
+     * 取出区间直方图并打印一行统计，只由统计线程调用
+     */
+    public synchronized void report() {
+        echoInterval = echoRecorder.getIntervalHistogram(echoInterval);
+        deliveryInterval = deliveryRecorder.getIntervalHistogram(deliveryInterval);
+        echoTotal.add(echoInterval);
+        deliveryTotal.add(deliveryInterval);
+        if (logWriter != null) {
+            echoInterval.setTag(ECHO_TAG);
+            deliveryInterval.setTag(DELIVERY_TAG);
+            logWriter.outputIntervalHistogram(echoInterval);
+            logWriter.outputIntervalHistogram(deliveryInterval);
+        }
+        log.info("[{}s] 连接 {}（新建 {}，失败 {}，抖动 {}，断开 {}，错误 {}） 收到消息 {} 回显 {}/跳过 {} | 回显 {} | 广播送达 {}",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos), connected.get(), connects.sum(), connectFailures.sum(),
+                churned.sum(), disconnects.sum(), errors.sum(), messagesReceived.sum(), echoSent.sum(), echoSkipped.sum(),
+                percentiles(echoInterval), percentiles(deliveryInterval));
+    }
+
+    /**
+     * 打印全程统计
+     */
+    public synchronized void summary() {
+        report();
+        log.info("========== 压测结果 ==========");
+        log.info("连接：新建 {}，失败 {}，抖动 {}，非主动断开 {}，错误 {}", connects.sum(), connectFailures.sum(), churned.sum(),
+                disconnects.sum(), errors.sum());
+        log.info("消息：收到 {}，回显发出 {}，跳过 {}", messagesReceived.sum(), echoSent.sum(), echoSkipped.sum());
+        log.info("回显延迟：{}", percentiles(echoTotal));
+        log.info("广播送达延迟：{}", percentiles(deliveryTotal));
+        synchronized (broadcastCompletion) {
+            log.info("广播：触发 {}，全部送达 {}，未全部送达 {}，完成时间 {}", broadcastsTriggered.sum(), broadcastsCompleted.sum(),
+                    broadcastsIncomplete.sum(), percentiles(broadcastCompletion));
+        }
+        if (logStream != null) {
+            logStream.close();
+        }
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "无数据";
+        }
+        return String.format("n=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms", histogram.getTotalCount(),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,186 @@
+package com.jobs.loadgen;
+
+import lombok.Data;
+
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测参数，命令行格式为 --名称=值，名称与字段名一致（如 --connections=20000）
+ * 只允许连接本机回环地址
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Data
+public class LoadOptions {
+
+    /**
+     * WebSocket 连接地址前缀，用户名拼接在后面
+     */
+    private String url = "ws://127.0.0.1:8086/socket";
+
+    /**
+     * 轮流使用的回环地址，逗号分隔，替换 url 中的主机名；
+     * 单个目标地址的本地端口数有限，上万个连接时可以分散到 127.0.0.1,127.0.0.2,... 多个地址
+     */
+    private String hosts = "";
+
+    /**
+     * 连接数，每个连接一个用户名
+     */
+    private int connections = 1000;
+
+    /**
+     * 用户名前缀，用户名为前缀加序号
+     */
+    private String usernamePrefix = "lg-";
+
+    /**
+     * 子协议：binary 为二进制信封，legacy 为只收发内容文本
+     */
+    private String protocol = "binary";
+
+    /**
+     * 每秒新建连接数
+     */
+    private int connectRate = 1000;
+
+    /**
+     * 建立连接的并发线程数
+     */
+    private int connectThreads = 16;
+
+    /**
+     * 全部连接建立后持续压测的时间（秒）
+     */
+    private int duration = 60;
+
+    /**
+     * 所有连接合计每秒发送的回显消息数
+     */
+    private int echoRate = 100;
+
+    /**
+     * 每秒断开并重新建立的连接数
+     */
+    private int churnRate = 0;
+
+    /**
+     * 触发广播的间隔（秒），为 0 时不触发
+     */
+    private int broadcastInterval = 10;
+
+    /**
+     * 等待一次广播全部送达的最长时间（秒），超时后按未完成统计
+     */
+    private int broadcastTimeout = 30;
+
+    /**
+     * 打印统计的间隔（秒）
+     */
+    private int reportInterval = 5;
+
+    /**
+     * 每个统计间隔的延迟直方图写入的 HdrHistogram 日志文件，为空时不写
+     */
+    private String histogramLog = "";
+
+    /**
+     * 从命令行参数解析
+     * @throws IllegalArgumentException 参数名不存在或值格式不正确
+     */
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("参数格式应为 --名称=值：" + arg);
+            }
+            String name = toFieldName(arg.substring(2, arg.indexOf('=')));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            try {
+                Field field = LoadOptions.class.getDeclaredField(name);
+                if (field.getType() == int.class) {
+                    field.setInt(options, Integer.parseInt(value));
+                } else {
+                    field.set(options, value);
+                }
+            } catch (NoSuchFieldException e) {
+                throw new IllegalArgumentException("未知参数：" + arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("参数值应为整数：" + arg);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * 支持 --connect-rate 和 --connectRate 两种写法
+     */
+    private static String toFieldName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        boolean upper = false;
+        for (char c : name.toCharArray()) {
+            if (c == '-') {
+                upper = true;
+            } else {
+                builder.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 校验参数，目标地址必须是本机回环地址
+     */
+    public void validate() {
+        if (connections <= 0 || connectRate <= 0 || connectThreads <= 0 || reportInterval <= 0) {
+            throw new IllegalArgumentException("connections、connect-rate、connect-threads、report-interval 必须大于 0");
+        }
+        if (!"binary".equals(protocol) && !"legacy".equals(protocol)) {
+            throw new IllegalArgumentException("protocol 只能是 binary 或 legacy");
+        }
+        for (URI target : targets()) {
+            if (!"ws".equals(target.getScheme())) {
+                throw new IllegalArgumentException("只支持 ws:// 地址：" + target);
+            }
+            try {
+                if (!InetAddress.getByName(target.getHost()).isLoopbackAddress()) {
+                    throw new IllegalArgumentException("只允许压测本机回环地址：" + target.getHost());
+                }
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("无法解析主机名：" + target.getHost());
+            }
+        }
+    }
+
+    /**
+     * 各回环地址对应的连接地址前缀
+     */
+    public List<URI> targets() {
+        URI base = URI.create(url);
+        List<URI> targets = new ArrayList<>();
+        if (hosts == null || hosts.trim().isEmpty()) {
+            targets.add(base);
+            return targets;
+        }
+        for (String host : hosts.split(",")) {
+            targets.add(URI.create(base.getScheme() + "://" + host.trim() + (base.getPort() > 0 ? ":" + base.getPort() : "") + base.getPath()));
+        }
+        return targets;
+    }
+
+    /**
+     * 触发广播的 HTTP 地址，与 WebSocket 地址使用同一个主机和端口
+     */
+    public String broadcastUrl() {
+        URI base = targets().get(0);
+        return "http://" + base.getHost() + (base.getPort() > 0 ? ":" + base.getPort() : "") + "/test/sendScheduledMessage";
+    }
+}
@@ -0,0 +1,140 @@
+package com.jobs.loadgen;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 解析服务端推送的消息内容
+ * 二进制信封格式与服务端 EnvelopeCodec 一致：版本(1 字节) + 类型(1 字节，最高位为压缩标志) + ID(变长整数) + 时间戳(变长整数) + 内容，
+ * 批量消息（BATCH）的内容为 [长度(变长整数) + 消息] 依次排列，带序号的消息（SEQUENCED）头部之后直接是一条消息；只收发内容文本的会话，二进制帧就是内容的 UTF-8 编码
+ * 压测只关心内容中的标记，不依赖服务端的代码
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class ServerMessageDecoder {
+
+    private static final int VERSION = 1;
+
+    private static final int FLAG_DEFLATE = 0x80;
+
+    private static final int TYPE_DIRECT = 1;
+
+    private static final int TYPE_BATCH = 6;
+
+    private static final int TYPE_SEQUENCED = 12;
+
+    private ServerMessageDecoder() {
+    }
+
+    /**
+     * 解析二进制信封，逐条回调消息内容
+     * @throws IllegalArgumentException 格式不正确
+     */
+    public static void decodeBinary(ByteBuffer frame, Consumer<String> payloads) {
+        ByteBuffer buffer = frame.duplicate();
+        if (buffer.remaining() < 4 || (buffer.get() & 0xFF) != VERSION) {
+            throw new IllegalArgumentException("不是有效的二进制信封");
+        }
+        int typeByte = buffer.get() & 0xFF;
+        getVarLong(buffer);
+        getVarLong(buffer);
+        if (typeByte == TYPE_SEQUENCED) {
+            decodeBinary(buffer.slice(), payloads);
+            return;
+        }
+        if ((typeByte & ~FLAG_DEFLATE) == TYPE_BATCH) {
+            while (buffer.hasRemaining()) {
+                int length = (int) getVarLong(buffer);
+                if (length > buffer.remaining()) {
+                    throw new IllegalArgumentException("批量消息长度不足");
+                }
+                ByteBuffer message = buffer.slice();
+                message.limit(length);
+                decodeBinary(message, payloads);
+                buffer.position(buffer.position() + length);
+            }
+            return;
+        }
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        if ((typeByte & FLAG_DEFLATE) != 0) {
+            payload = inflate(payload);
+        }
+        payloads.accept(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 编码客户端发出的二进制信封，类型为 DIRECT，服务端回显其内容
+     */
+    public static ByteBuffer encodeBinary(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        long timestamp = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 1 + 10 + bytes.length);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) TYPE_DIRECT);
+        putVarLong(buffer, 0);
+        putVarLong(buffer, timestamp);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 只收发内容文本的会话收到的二进制帧
+     */
+    public static String decodeText(ByteBuffer frame) {
+        return StandardCharsets.UTF_8.decode(frame.duplicate()).toString();
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (!buffer.hasRemaining() || shift > 63) {
+                throw new IllegalArgumentException("变长整数格式不正确");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[Math.max(64, data.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            return Arrays.copyOf(out, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩内容无法解压", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
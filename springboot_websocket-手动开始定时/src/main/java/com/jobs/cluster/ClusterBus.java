@@ -0,0 +1,33 @@
+package com.jobs.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * 集群消息总线 SPI
+ * 负责节点之间的消息投递，可以替换为 Redis、MQ 等实现，默认提供进程内实现 {@link InMemoryClusterBus}
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public interface ClusterBus {
+
+    /**
+     * 订阅发往指定节点的消息
+     */
+    void subscribe(String nodeId, Consumer<ClusterMessage> listener);
+
+    /**
+     * 取消订阅
+     */
+    void unsubscribe(String nodeId);
+
+    /**
+     * 发送消息到指定节点
+     * @return 目标节点是否存在
+     */
+    boolean send(String nodeId, ClusterMessage message);
+
+    /**
+     * 发送消息到除来源节点以外的所有节点
+     */
+    void publish(ClusterMessage message);
+}
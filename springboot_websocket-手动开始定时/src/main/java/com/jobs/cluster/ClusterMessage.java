@@ -0,0 +1,84 @@
+package com.jobs.cluster;
+
+import com.jobs.protocol.Envelope;
+
+/**
+ * 节点间传递的消息
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class ClusterMessage {
+
+    public enum Type {
+        /**
+         * 发给指定用户，只投递到该用户所在的节点
+         */
+        USER,
+        /**
+         * 广播，投递到所有节点，由各节点推送给本地在线用户
+         */
+        BROADCAST,
+        /**
+         * 频道消息，投递到所有节点，由各节点推送给本地订阅了该频道的会话
+         */
+        CHANNEL
+    }
+
+    private final Type type;
+
+    //发出该消息的节点
+    private final String sourceNode;
+
+    //目标用户名，广播和频道消息为 null
+    private final String username;
+
+    //消息信封，ID 和时间戳由发出消息的节点生成，各节点推送给用户的内容一致
+    private final Envelope envelope;
+
+    //频道名，仅 CHANNEL 消息使用
+    private final String channel;
+
+    public ClusterMessage(Type type, String sourceNode, String username, Envelope envelope) {
+        this(type, sourceNode, username, envelope, null);
+    }
+
+    public ClusterMessage(Type type, String sourceNode, String username, Envelope envelope, String channel) {
+        this.type = type;
+        this.sourceNode = sourceNode;
+        this.username = username;
+        this.envelope = envelope;
+        this.channel = channel;
+    }
+
+    public static ClusterMessage toUser(String sourceNode, String username, Envelope envelope) {
+        return new ClusterMessage(Type.USER, sourceNode, username, envelope);
+    }
+
+    public static ClusterMessage broadcast(String sourceNode, Envelope envelope) {
+        return new ClusterMessage(Type.BROADCAST, sourceNode, null, envelope);
+    }
+
+    public static ClusterMessage toChannel(String sourceNode, String channel, Envelope envelope) {
+        return new ClusterMessage(Type.CHANNEL, sourceNode, null, envelope, channel);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSourceNode() {
+        return sourceNode;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,130 @@
+package com.jobs.cluster;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.websocket.BroadcastResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 集群消息路由
+ * 发给单个用户的消息推送给该用户在本节点上的设备，同时按路由表投递到该用户有连接的其它节点；
+ * 广播消息推送给本节点用户的同时经总线发往其它节点，由各节点推送给各自的用户
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class ClusterRouter {
+
+    private final String nodeId;
+
+    private final ClusterBus clusterBus;
+
+    private final SessionDirectory sessionDirectory;
+
+    private final LocalDelivery localDelivery;
+
+    public ClusterRouter(String nodeId, ClusterBus clusterBus, SessionDirectory sessionDirectory, LocalDelivery localDelivery) {
+        this.nodeId = nodeId;
+        this.clusterBus = clusterBus;
+        this.sessionDirectory = sessionDirectory;
+        this.localDelivery = localDelivery;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 开始接收发往本节点的消息
+     */
+    public void start() {
+        clusterBus.subscribe(nodeId, this::onMessage);
+        log.info("集群节点 {} 已加入消息总线", nodeId);
+    }
+
+    /**
+     * 停止接收消息
+     */
+    public void stop() {
+        clusterBus.unsubscribe(nodeId);
+    }
+
+    /**
+     * 用户连接到本节点
+     */
+    public void userConnected(String username) {
+        sessionDirectory.register(username, nodeId);
+    }
+
+    /**
+     * 用户在本节点上的最后一个设备断开，只移除本节点的记录
+     */
+    public void userDisconnected(String username) {
+        sessionDirectory.unregister(username, nodeId);
+    }
+
+    /**
+     * 发送消息给指定用户，用户的设备可能分布在多个节点上，每个节点都会收到一份
+     * @return 是否至少推送给了本节点或投递到了一个其它节点
+     */
+    public boolean sendToUser(String username, Envelope envelope) {
+        boolean delivered = localDelivery.sendToUser(username, envelope);
+        ClusterMessage message = null;
+        for (String target : sessionDirectory.locate(username)) {
+            if (target.equals(nodeId)) {
+                continue;
+            }
+            if (message == null) {
+                message = ClusterMessage.toUser(nodeId, username, envelope);
+            }
+            if (clusterBus.send(target, message)) {
+                delivered = true;
+            } else {
+                log.warn("用户 {} 所在的节点 {} 不可达，该节点上的设备收不到消息", username, target);
+            }
+        }
+        if (!delivered) {
+            log.warn("用户 {} 不在线，消息未发送", username);
+        }
+        return delivered;
+    }
+
+    /**
+     * 广播消息给所有节点上的在线用户，其它节点各自推送，互不等待
+     * @return 本节点的推送结果
+     */
+    public CompletableFuture<BroadcastResult> broadcast(Envelope envelope) {
+        clusterBus.publish(ClusterMessage.broadcast(nodeId, envelope));
+        return localDelivery.broadcast(envelope);
+    }
+
+    /**
+     * 发布消息到频道，各节点推送给本地的订阅者
+     * @return 本节点的推送结果
+     */
+    public CompletableFuture<BroadcastResult> publish(String channel, Envelope envelope) {
+        clusterBus.publish(ClusterMessage.toChannel(nodeId, channel, envelope));
+        return localDelivery.publish(channel, envelope);
+    }
+
+    private void onMessage(ClusterMessage message) {
+        switch (message.getType()) {
+            case USER:
+                if (!localDelivery.sendToUser(message.getUsername(), message.getEnvelope())) {
+                    log.warn("节点 {} 转发的消息到达时用户 {} 已不在本节点", message.getSourceNode(), message.getUsername());
+                }
+                break;
+            case BROADCAST:
+                localDelivery.broadcast(message.getEnvelope())
+                        .thenAccept(result -> log.info("节点 {} 转发的广播推送完成：{}", message.getSourceNode(), result));
+                break;
+            case CHANNEL:
+                localDelivery.publish(message.getChannel(), message.getEnvelope())
+                        .thenAccept(result -> log.debug("节点 {} 转发的频道 {} 消息推送完成：{}", message.getSourceNode(), message.getChannel(), result));
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.jobs.cluster;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的用户路由表，与 {@link InMemoryClusterBus} 配合使用
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class InMemorySessionDirectory implements SessionDirectory {
+
+    //存储 username 与该用户有连接的节点 ID 的对应关系，用户没有任何节点时移除
+    private final ConcurrentHashMap<String, Set<String>> routes = new ConcurrentHashMap<>();
+
+    //在 compute 中增删节点，与移除空集合互斥，不会加入一个已被移除的集合
+    @Override
+    public void register(String username, String nodeId) {
+        routes.compute(username, (key, nodes) -> {
+            if (nodes == null) {
+                nodes = ConcurrentHashMap.newKeySet();
+            }
+            nodes.add(nodeId);
+            return nodes;
+        });
+    }
+
+    @Override
+    public void unregister(String username, String nodeId) {
+        routes.computeIfPresent(username, (key, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public Set<String> locate(String username) {
+        Set<String> nodes = routes.get(username);
+        return nodes != null ? Collections.unmodifiableSet(nodes) : Collections.emptySet();
+    }
+}
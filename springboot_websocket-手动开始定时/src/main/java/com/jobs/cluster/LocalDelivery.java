@@ -0,0 +1,32 @@
+package com.jobs.cluster;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.websocket.BroadcastResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 本节点的消息投递，由 WebSocket 服务实现，集群路由收到发往本节点的消息后通过它推送给本地会话
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public interface LocalDelivery {
+
+    /**
+     * 推送给本节点上的指定用户
+     * @return 用户是否在本节点在线
+     */
+    boolean sendToUser(String username, Envelope envelope);
+
+    /**
+     * 推送给本节点上的所有在线用户
+     * @return 本节点的推送结果
+     */
+    CompletableFuture<BroadcastResult> broadcast(Envelope envelope);
+
+    /**
+     * 推送给本节点上订阅了频道的会话
+     * @return 本节点的推送结果
+     */
+    CompletableFuture<BroadcastResult> publish(String channel, Envelope envelope);
+}
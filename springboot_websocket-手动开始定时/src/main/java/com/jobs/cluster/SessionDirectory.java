@@ -0,0 +1,27 @@
+package com.jobs.cluster;
+
+import java.util.Set;
+
+/**
+ * 用户所在节点的路由表 SPI
+ * 记录每个在线用户连接在哪些节点上，同一用户的多个设备可以分布在不同节点，发给单个用户的消息只投递到这些节点
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public interface SessionDirectory {
+
+    /**
+     * 记录用户在指定节点上有连接，不影响该用户在其它节点上的记录
+     */
+    void register(String username, String nodeId);
+
+    /**
+     * 移除用户在指定节点上的记录，不影响该用户在其它节点上的记录，所有节点都移除后用户不再在线
+     */
+    void unregister(String username, String nodeId);
+
+    /**
+     * 查找用户有连接的所有节点，不在线时返回空集合
+     */
+    Set<String> locate(String username);
+}
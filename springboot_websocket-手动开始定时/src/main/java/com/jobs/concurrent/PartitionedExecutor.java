@@ -0,0 +1,233 @@
+package com.jobs.concurrent;
+
+import com.jobs.metrics.LatencyHistogram;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分区任务执行器
+ * 由若干个单线程分区组成，同一个 key 的任务总是进入同一个分区，按提交顺序依次执行，不同 key 的任务分散到各分区并行执行
+ * 定时器只负责按时提交任务，推送本身在分区线程中执行，一个耗时较长的任务只占用它所在的分区，不会推迟其它分区中的任务
+ * 按任务名统计排队时间（计划执行时间到开始执行，未指定计划时间时从提交算起，即调度延迟）和执行时间，
+ * 传入 MeterRegistry 时同时记录到 websocket.scheduler.lag、websocket.scheduler.run 两个延迟直方图，以任务名为标签
+ * 开启虚拟线程时每个分区的执行线程换成虚拟线程，分区数放大为 {@link #VIRTUAL_PARTITIONS_PER_CORE} 倍，
+ * 同一 key 的任务仍然依次执行，阻塞的任务只挂起它所在分区的虚拟线程，不占用平台线程
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class PartitionedExecutor {
+
+    //虚拟线程模式下每个核心对应的分区数，虚拟线程空闲时几乎不占资源，分区多一些可以减少不同 key 之间的相互等待
+    public static final int VIRTUAL_PARTITIONS_PER_CORE = 16;
+
+    private final ThreadPoolExecutor[] partitions;
+
+    //分区线程是否为虚拟线程
+    private final boolean virtualThreads;
+
+    //按任务名分配的分区，不同任务依次分配到不同分区
+    private final ConcurrentHashMap<String, Integer> jobPartitions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextJobPartition = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, JobMetrics> metrics = new ConcurrentHashMap<>();
+
+    //为 null 时不上报指标
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param name           分区线程名前缀
+     * @param partitions     分区数，通常为 CPU 核心数，虚拟线程模式下实际分区数为它的 {@link #VIRTUAL_PARTITIONS_PER_CORE} 倍
+     * @param virtualThreads 分区是否改用虚拟线程执行，当前 JDK 必须支持虚拟线程
+     */
+    public PartitionedExecutor(String name, int partitions, boolean virtualThreads) {
+        this(name, partitions, virtualThreads, null);
+    }
+
+    /**
+     * @param meterRegistry 记录调度延迟和执行耗时直方图的注册表，为 null 时不上报
+     */
+    public PartitionedExecutor(String name, int partitions, boolean virtualThreads, MeterRegistry meterRegistry) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("分区数必须大于 0");
+        }
+        int count = virtualThreads ? partitions * VIRTUAL_PARTITIONS_PER_CORE : partitions;
+        this.partitions = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String threadName = name + "-" + i;
+            ThreadFactory threadFactory = virtualThreads ? VirtualThreads.newThreadFactory(threadName + "-") : runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            };
+            //单线程执行保证分区内的任务依次执行，虚拟线程模式下同样如此
+            this.partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        }
+        this.virtualThreads = virtualThreads;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * 按任务名选择分区执行，同一任务的多次执行依次进行，不同任务尽量分到不同分区
+     */
+    public void execute(String job, Runnable task) {
+        Integer partition = jobPartitions.get(job);
+        if (partition == null) {
+            partition = jobPartitions.computeIfAbsent(job, k -> nextJobPartition.getAndIncrement() % partitions.length);
+        }
+        submit(job, partition, System.nanoTime(), task);
+    }
+
+    /**
+     * 按 key 选择分区执行，同一 key 的任务依次进行，统计计入任务名 job
+     */
+    public void execute(String job, Object key, Runnable task) {
+        execute(job, key, System.nanoTime(), task);
+    }
+
+    /**
+     * 按 key 选择分区执行，排队时间从计划执行时间 dueNanos（System.nanoTime() 时间）算起，包含定时器本身的触发延迟
+     */
+    public void execute(String job, Object key, long dueNanos, Runnable task) {
+        int hash = key.hashCode();
+        submit(job, ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % partitions.length, dueNanos, task);
+    }
+
+    private void submit(String job, int partition, long dueNanos, Runnable task) {
+        JobMetrics jobMetrics = metrics.get(job);
+        if (jobMetrics == null) {
+            jobMetrics = metrics.computeIfAbsent(job, this::newJobMetrics);
+        }
+        JobMetrics m = jobMetrics;
+        m.submitted.increment();
+        Runnable measured = () -> {
+            long startNanos = System.nanoTime();
+            try {
+                task.run();
+                m.completed.increment();
+            } catch (RuntimeException e) {
+                m.failed.increment();
+                log.error("任务 {} 执行失败: {}", job, e.getMessage(), e);
+            } finally {
+                m.record(Math.max(0, startNanos - dueNanos), System.nanoTime() - startNanos);
+            }
+        };
+        try {
+            partitions[partition].execute(measured);
+        } catch (RejectedExecutionException e) {
+            m.rejected.increment();
+            log.warn("任务执行器已关闭，丢弃任务 {}", job);
+        }
+    }
+
+    private JobMetrics newJobMetrics(String job) {
+        if (meterRegistry == null) {
+            return new JobMetrics(null, null);
+        }
+        LatencyHistogram lag = new LatencyHistogram();
+        lag.register(meterRegistry, "websocket.scheduler.lag", "定时任务计划执行时间到开始执行的延迟", Tags.of("job", job));
+        LatencyHistogram run = new LatencyHistogram();
+        run.register(meterRegistry, "websocket.scheduler.run", "定时任务的执行耗时", Tags.of("job", job));
+        return new JobMetrics(lag, run);
+    }
+
+    /**
+     * 执行统计，包括各分区的排队任务数和各任务的排队、执行耗时
+     */
+    public Map<String, Object> getStats() {
+        int[] queueDepths = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            queueDepths[i] = partitions[i].getQueue().size();
+        }
+        Map<String, Object> jobs = new HashMap<>();
+        metrics.forEach((job, m) -> jobs.put(job, m.toMap()));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("partitions", partitions.length);
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("queueDepths", queueDepths);
+        stats.put("jobs", jobs);
+        return stats;
+    }
+
+    /**
+     * 停止接收新任务，等待已提交的任务执行完
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor partition : partitions) {
+            partition.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        try {
+            for (ThreadPoolExecutor partition : partitions) {
+                partition.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单个任务名的执行统计
+     */
+    private static final class JobMetrics {
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder runNanos = new LongAdder();
+        private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+        //未上报指标时为 null
+        private final LatencyHistogram lagHistogram;
+        private final LatencyHistogram runHistogram;
+
+        private JobMetrics(LatencyHistogram lagHistogram, LatencyHistogram runHistogram) {
+            this.lagHistogram = lagHistogram;
+            this.runHistogram = runHistogram;
+        }
+
+        private void record(long queued, long run) {
+            queueNanos.add(queued);
+            maxQueueNanos.accumulate(queued);
+            runNanos.add(run);
+            maxRunNanos.accumulate(run);
+            if (lagHistogram != null) {
+                lagHistogram.record(queued);
+                runHistogram.record(run);
+            }
+        }
+
+        private Map<String, Object> toMap() {
+            long finished = completed.sum() + failed.sum();
+            Map<String, Object> map = new HashMap<>();
+            map.put("submitted", submitted.sum());
+            map.put("completed", completed.sum());
+            map.put("failed", failed.sum());
+            map.put("rejected", rejected.sum());
+            map.put("averageQueueMillis", finished > 0 ? queueNanos.sum() / 1e6 / finished : 0);
+            map.put("maxQueueMillis", maxQueueNanos.get() / 1e6);
+            map.put("averageRunMillis", finished > 0 ? runNanos.sum() / 1e6 / finished : 0);
+            map.put("maxRunMillis", maxRunNanos.get() / 1e6);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.jobs.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持
+ * 项目以 Java 8 为编译目标，虚拟线程（JDK 21 正式提供）的 API 通过反射调用；
+ * 运行在不支持虚拟线程的 JDK 上时 isAvailable() 返回 false，调用方继续使用平台线程
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class VirtualThreads {
+
+    //Thread.ofVirtual()
+    private static final Method OF_VIRTUAL;
+
+    //Thread.Builder.name(String prefix, long start)
+    private static final Method NAME;
+
+    //Thread.Builder.factory()
+    private static final Method FACTORY;
+
+    //Executors.newThreadPerTaskExecutor(ThreadFactory)
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    private static final boolean AVAILABLE;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newExecutor = null;
+        boolean available = false;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            //JDK 19/20 中虚拟线程是预览特性，未开启预览时调用会抛出异常
+            ofVirtual.invoke(null);
+            available = true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //JDK 版本过低或未开启预览特性
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        AVAILABLE = available;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * 创建虚拟线程工厂，线程名为 prefix + 序号
+     * @throws IllegalStateException 当前 JDK 不支持虚拟线程
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        checkAvailable();
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器，任务阻塞时只挂起虚拟线程，不占用平台线程
+     * @throws IllegalStateException 当前 JDK 不支持虚拟线程
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static void checkAvailable() {
+        if (!AVAILABLE) {
+            throw new IllegalStateException("当前 JDK " + System.getProperty("java.version") + " 不支持虚拟线程，需要 JDK 21 及以上版本");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.jobs.config;
+
+import com.jobs.cluster.ClusterBus;
+import com.jobs.cluster.ClusterRouter;
+import com.jobs.cluster.InMemoryClusterBus;
+import com.jobs.cluster.InMemorySessionDirectory;
+import com.jobs.cluster.LocalDelivery;
+import com.jobs.cluster.SessionDirectory;
+import com.jobs.protocol.Envelope;
+import com.jobs.websocket.BroadcastResult;
+import com.jobs.websocket.WebSocketServer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: 集群配置，默认使用进程内的消息总线和路由表，
+ * 默认实现不注册为 Bean，只在容器里没有对应 Bean 时通过 ObjectProvider 兜底创建，
+ * 多节点部署时声明自己的 ClusterBus、SessionDirectory Bean（如基于 Redis）即可替换
+ */
+@Configuration
+public class ClusterConfig {
+
+    //兜底创建的进程内消息总线，不是 Bean，需要在容器关闭时自己关闭投递线程
+    private InMemoryClusterBus defaultClusterBus;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ClusterRouter clusterRouter(WebSocketProperties webSocketProperties,
+                                       ObjectProvider<ClusterBus> clusterBusProvider,
+                                       ObjectProvider<SessionDirectory> sessionDirectoryProvider) {
+        ClusterBus clusterBus = clusterBusProvider.getIfAvailable(() -> {
+            defaultClusterBus = new InMemoryClusterBus();
+            return defaultClusterBus;
+        });
+        SessionDirectory sessionDirectory = sessionDirectoryProvider.getIfAvailable(InMemorySessionDirectory::new);
+        LocalDelivery localDelivery = new LocalDelivery() {
+            @Override
+            public boolean sendToUser(String username, Envelope envelope) {
+                return WebSocketServer.sendLocalMessage(username, envelope);
+            }
+
+            @Override
+            public CompletableFuture<BroadcastResult> broadcast(Envelope envelope) {
+                return WebSocketServer.sendMessageToAll(envelope);
+            }
+
+            @Override
+            public CompletableFuture<BroadcastResult> publish(String channel, Envelope envelope) {
+                return WebSocketServer.publishLocal(channel, envelope);
+            }
+        };
+        return new ClusterRouter(webSocketProperties.getCluster().getNodeId(), clusterBus, sessionDirectory, localDelivery);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (defaultClusterBus != null) {
+            defaultClusterBus.shutdown();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.jobs.config;
+
+import com.jobs.offline.MappedOfflineStore;
+import com.jobs.offline.NoopOfflineStore;
+import com.jobs.offline.OfflineStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: 离线消息配置，默认使用本机内存映射文件保存离线消息，
+ * 多节点部署时每个节点只保存自己收到的离线消息，需要跨节点补发时声明自己的 OfflineStore Bean 即可替换
+ */
+@Configuration
+public class OfflineConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(OfflineStore.class)
+    public OfflineStore offlineStore(WebSocketProperties webSocketProperties, @Value("${server.port:8080}") int serverPort) {
+        WebSocketProperties.Offline offline = webSocketProperties.getOffline();
+        if (!offline.isEnabled()) {
+            return new NoopOfflineStore();
+        }
+        //未配置目录时按端口区分，同一台机器上的多个实例不会争用同一个目录
+        String directory = offline.getDirectory();
+        if (directory == null || directory.trim().isEmpty()) {
+            directory = Paths.get(System.getProperty("java.io.tmpdir"), "websocket-offline-" + serverPort).toString();
+        }
+        return new MappedOfflineStore(Paths.get(directory), offline.getSegmentSize(),
+                offline.getRetention(), offline.getMaxBytes(), offline.getCompactInterval());
+    }
+}
@@ -0,0 +1,36 @@
+package com.jobs.config;
+
+import com.jobs.concurrent.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: 虚拟线程配置，开启 websocket.virtual-threads 后 Tomcat 连接器改用每个请求一个虚拟线程的执行器，
+ * WebSocket 的 onOpen/onMessage/onClose 等回调都在虚拟线程中执行，回调中的阻塞操作不再占用容器的工作线程
+ * 当前 JDK 不支持虚拟线程时只打印警告，继续使用默认的平台线程池
+ */
+@Slf4j
+@Configuration
+public class VirtualThreadConfig {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadCustomizer(WebSocketProperties webSocketProperties) {
+        return factory -> {
+            if (!webSocketProperties.isVirtualThreads()) {
+                return;
+            }
+            if (!VirtualThreads.isAvailable()) {
+                log.warn("已开启虚拟线程模式，但当前 JDK {} 不支持虚拟线程，继续使用平台线程", System.getProperty("java.version"));
+                return;
+            }
+            factory.addConnectorCustomizers(connector ->
+                    connector.getProtocolHandler().setExecutor(VirtualThreads.newThreadPerTaskExecutor("tomcat-virtual-")));
+            log.info("Tomcat 连接器使用虚拟线程执行请求和 WebSocket 回调");
+        };
+    }
+}
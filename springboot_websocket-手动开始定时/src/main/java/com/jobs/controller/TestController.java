@@ -1,9 +1,19 @@
 package com.jobs.controller;
 
+import com.jobs.concurrent.PartitionedExecutor;
 import com.jobs.dto.SendMsgDTO;
 import com.jobs.dto.ScheduledMessageDTO;
 import com.jobs.dto.ScheduledTaskStatusDTO;
+import com.jobs.dto.UserScheduleDTO;
+import com.jobs.offline.OfflineStore;
 import com.jobs.service.ScheduledMessageService;
+import com.jobs.websocket.ChannelRegistry;
+import com.jobs.websocket.DeliveryTracker;
+import com.jobs.websocket.FrameCompressor;
+import com.jobs.websocket.HeartbeatMonitor;
+import com.jobs.websocket.OutboundBatcher;
+import com.jobs.websocket.OutboundMonitor;
+import com.jobs.websocket.UserPage;
 import com.jobs.websocket.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -11,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @RestController
 @RequestMapping("/test")
@@ -22,6 +33,30 @@ public class TestController {
     @Autowired
     private ScheduledMessageService scheduledMessageService;
 
+    @Autowired
+    private OutboundMonitor outboundMonitor;
+
+    @Autowired
+    private FrameCompressor frameCompressor;
+
+    @Autowired
+    private OutboundBatcher outboundBatcher;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private OfflineStore offlineStore;
+
+    @Autowired
+    private DeliveryTracker deliveryTracker;
+
+    @Autowired
+    private HeartbeatMonitor heartbeatMonitor;
+
+    @Autowired
+    private PartitionedExecutor jobExecutor;
+
     //通过后端代码，向指定用户发送信息，测试指定用户的前端页面是否可以收到信息
     @PostMapping("/sendmsg")
     public String send(@RequestBody SendMsgDTO sendMsgDTO) throws IOException {
@@ -43,20 +78,102 @@ public class TestController {
     }
 
     /**
-     * 获取当前在线用户信息
+     * 分页获取当前在线用户信息，cursor 为上一页返回的 nextCursor；
+     * 带上上次返回的 version 且在线用户没有变化时 changed 为 false，不返回用户名
      */
     @GetMapping("/onlineUsers")
-    public Object getOnlineUsers() {
+    public Object getOnlineUsers(@RequestParam(required = false) String cursor,
+                                 @RequestParam(defaultValue = "100") int limit,
+                                 @RequestParam(value = "version", required = false) Long knownVersion) {
         int onlineCount = WebSocketServer.getOnlineUserCount();
-        String[] onlineUsers = WebSocketServer.getOnlineUsers();
+        int onlineDevices = WebSocketServer.getOnlineDeviceCount();
+        UserPage page = WebSocketServer.getOnlineUsers(cursor, limit, knownVersion);
         
         return new Object() {
             public final int count = onlineCount;
-            public final String[] users = onlineUsers;
+            public final int devices = onlineDevices;
+            public final List<String> users = page.getUsers();
+            public final String nextCursor = page.getNextCursor();
+            public final long version = page.getVersion();
+            public final boolean changed = page.isChanged();
             public final String currentTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         };
     }
 
+    /**
+     * 获取发送队列统计信息（队列深度、丢弃/合并消息数、断开的慢客户端数）
+     */
+    @GetMapping("/outboundStats")
+    public Object getOutboundStats() {
+        return outboundMonitor.getStats();
+    }
+
+    /**
+     * 获取压缩统计信息（压缩率、CPU 消耗、协商了 permessage-deflate 的会话数）
+     */
+    @GetMapping("/compressionStats")
+    public Object getCompressionStats() {
+        return frameCompressor.getStats();
+    }
+
+    /**
+     * 获取攒批统计信息（批量消息数、平均每批消息数）
+     */
+    @GetMapping("/batchStats")
+    public Object getBatchStats() {
+        return outboundBatcher.getStats();
+    }
+
+    /**
+     * 发布消息到频道，集群内订阅了该频道的会话都会收到
+     */
+    @PostMapping("/publish")
+    public String publish(@RequestParam String channel, @RequestParam String message) {
+        int subscribers = channelRegistry.subscriberCount(channel);
+        WebSocketServer.publishToChannel(channel, message);
+        return "频道消息已发布，本节点订阅者数：" + subscribers;
+    }
+
+    /**
+     * 获取本节点各频道的订阅者数量
+     */
+    @GetMapping("/channels")
+    public Object getChannels() {
+        return channelRegistry.getStats();
+    }
+
+    /**
+     * 获取离线消息存储统计信息（段数、待补发用户数和消息数）
+     */
+    @GetMapping("/offlineStats")
+    public Object getOfflineStats() {
+        return offlineStore.getStats();
+    }
+
+    /**
+     * 获取可靠投递统计信息（确认数、重传数、投递延迟）
+     */
+    @GetMapping("/deliveryStats")
+    public Object getDeliveryStats() {
+        return deliveryTracker.getStats();
+    }
+
+    /**
+     * 获取心跳统计信息（发出的 ping 数、清理的连接数）
+     */
+    @GetMapping("/heartbeatStats")
+    public Object getHeartbeatStats() {
+        return heartbeatMonitor.getStats();
+    }
+
+    /**
+     * 获取定时任务执行统计信息（各分区排队数、各任务的排队和执行耗时）
+     */
+    @GetMapping("/jobStats")
+    public Object getJobStats() {
+        return jobExecutor.getStats();
+    }
+
     /**
      * 立即触发定时推送（测试用）
      */
@@ -97,27 +214,27 @@ public class TestController {
     }
 
     /**
-     * 检查定时任务状态
+     * 检查定时任务状态，在线用户只返回第一页，其余用 /test/onlineUsers 翻页
      */
     @GetMapping("/scheduledTaskStatus")
-    public ScheduledTaskStatusDTO getScheduledTaskStatus() {
+    public ScheduledTaskStatusDTO getScheduledTaskStatus(@RequestParam(defaultValue = "100") int limit) {
         int onlineCount = WebSocketServer.getOnlineUserCount();
-        String[] onlineUsers = WebSocketServer.getOnlineUsers();
+        UserPage onlineUsers = WebSocketServer.getOnlineUsers(null, limit, null);
         String currentTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         String message = "定时任务现在由系统自动管理，当有用户连接时自动启动，无用户时自动停止";
         
-        return new ScheduledTaskStatusDTO(onlineCount, onlineUsers, currentTime, message);
+        return new ScheduledTaskStatusDTO(onlineCount, onlineUsers.getUsers(), onlineUsers.getNextCursor(), currentTime, message);
     }
     
     // 用户级定时任务管理API
     
     /**
-     * 启动当前用户的定时任务
+     * 启动当前用户的定时任务，可选参数 period、initialDelay（毫秒）或 cron 指定推送时间
      */
     @PostMapping("/startUserScheduledTask")
-    public String startUserScheduledTask(@RequestParam String username) {
+    public String startUserScheduledTask(@RequestParam String username, UserScheduleDTO userScheduleDTO) {
         try {
-            scheduledMessageService.startUserScheduledTask(username);
+            scheduledMessageService.startUserScheduledTask(username, userScheduleDTO);
             return "用户 " + username + " 的定时任务已启动";
         } catch (Exception e) {
             return "启动用户定时任务失败：" + e.getMessage();
@@ -138,12 +255,12 @@ public class TestController {
     }
     
     /**
-     * 获取当前用户的定时任务状态
+     * 获取当前用户的定时任务状态，在线用户和启用了定时任务的用户只返回第一页
      */
     @GetMapping("/userScheduledTaskStatus")
-    public Object getUserScheduledTaskStatus(@RequestParam String username) {
+    public Object getUserScheduledTaskStatus(@RequestParam String username, @RequestParam(defaultValue = "100") int limit) {
         try {
-            return scheduledMessageService.getUserScheduledTaskInfo(username);
+            return scheduledMessageService.getUserScheduledTaskInfo(username, limit);
         } catch (Exception e) {
             return new Object() {
                 public final String error = "获取用户定时任务状态失败：" + e.getMessage();
@@ -151,6 +268,16 @@ public class TestController {
         }
     }
     
+    /**
+     * 分页获取启用了定时任务的用户，参数含义与 /test/onlineUsers 相同
+     */
+    @GetMapping("/scheduledUsers")
+    public Object getScheduledUsers(@RequestParam(required = false) String cursor,
+                                    @RequestParam(defaultValue = "100") int limit,
+                                    @RequestParam(value = "version", required = false) Long knownVersion) {
+        return WebSocketServer.getScheduledUsers(cursor, limit, knownVersion);
+    }
+    
     /**
      * 向指定用户发送定时消息
      */
@@ -1,5 +1,7 @@
 package com.jobs.dto;
 
+import java.util.List;
+
 /**
  * 定时任务状态DTO
  * @Author: xulai
@@ -7,15 +9,19 @@ package com.jobs.dto;
  */
 public class ScheduledTaskStatusDTO {
     private int onlineUserCount;
-    private String[] onlineUsers;
+    //在线用户的第一页
+    private List<String> onlineUsers;
+    //在线用户下一页的游标，没有下一页时为 null
+    private String nextCursor;
     private String currentTime;
     private String message;
 
     public ScheduledTaskStatusDTO() {}
 
-    public ScheduledTaskStatusDTO(int onlineUserCount, String[] onlineUsers, String currentTime, String message) {
+    public ScheduledTaskStatusDTO(int onlineUserCount, List<String> onlineUsers, String nextCursor, String currentTime, String message) {
         this.onlineUserCount = onlineUserCount;
         this.onlineUsers = onlineUsers;
+        this.nextCursor = nextCursor;
         this.currentTime = currentTime;
         this.message = message;
     }
@@ -28,14 +34,22 @@ public class ScheduledTaskStatusDTO {
         this.onlineUserCount = onlineUserCount;
     }
 
-    public String[] getOnlineUsers() {
+    public List<String> getOnlineUsers() {
         return onlineUsers;
     }
 
-    public void setOnlineUsers(String[] onlineUsers) {
+    public void setOnlineUsers(List<String> onlineUsers) {
         this.onlineUsers = onlineUsers;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public String getCurrentTime() {
         return currentTime;
     }
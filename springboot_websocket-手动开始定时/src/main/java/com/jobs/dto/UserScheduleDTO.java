@@ -0,0 +1,27 @@
+package com.jobs.dto;
+
+import lombok.Data;
+
+/**
+ * 用户级定时任务参数DTO
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Data
+public class UserScheduleDTO {
+
+    /**
+     * 推送周期（毫秒），为空时使用默认周期
+     */
+    private Long period;
+
+    /**
+     * 首次推送的延迟（毫秒），为空时立即开始
+     */
+    private Long initialDelay;
+
+    /**
+     * cron 表达式，不为空时按 cron 推送，忽略 period 和 initialDelay
+     */
+    private String cron;
+}
@@ -0,0 +1,100 @@
+package com.jobs.metrics;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图
+ * 记录到 HdrHistogram 的 Recorder 中，多线程并发记录不加锁、不分配对象，适合放在每条消息的发送路径上；
+ * Micrometer 自带的 Timer 每次记录都会为最大值窗口创建一个 lambda，不在热路径上使用
+ * 向 Micrometer 注册为一个 FunctionTimer（次数、总耗时）和 p50/p99/p999/max 四个 Gauge，
+ * 分位数在读取时按需刷新，统计的是上一次刷新以来记录的值，刷新间隔不小于 REFRESH_INTERVAL
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class LatencyHistogram {
+
+    //可记录的最大延迟，超过的按最大值记录
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    //有效数字位数，2 位时相对误差 1%，直方图约占几十 KB
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    //两次刷新分位数的最小间隔，一次抓取读取多个 Gauge 时只刷新一次
+    private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    //以下字段只在持有锁时访问
+    private Histogram interval;
+
+    private long lastRefresh = System.nanoTime() - REFRESH_INTERVAL;
+
+    //上一个统计区间的分位数和最大值（纳秒），与 QUANTILES 对应
+    private final long[] quantileNanos = new long[QUANTILES.length];
+
+    private long maxNanos;
+
+    /**
+     * 记录一次耗时，负数按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+        recorder.recordValue(value);
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * 注册到 Micrometer
+     * @param name 指标名，分位数 Gauge 的名称为 name.percentile、最大值为 name.max
+     */
+    public void register(MeterRegistry registry, String name, String description, Tags tags) {
+        FunctionTimer.builder(name, this, h -> h.count.sum(), h -> h.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .tags(tags).description(description).register(registry);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            int index = i;
+            Gauge.builder(name + ".percentile", this, h -> h.quantileSeconds(index))
+                    .tags(tags).tag("quantile", String.valueOf(QUANTILES[i]))
+                    .baseUnit("seconds").description(description + "（最近统计区间的分位数）").register(registry);
+        }
+        Gauge.builder(name + ".max", this, LatencyHistogram::maxSeconds)
+                .tags(tags).baseUnit("seconds").description(description + "（最近统计区间的最大值）").register(registry);
+    }
+
+    private synchronized double quantileSeconds(int index) {
+        refresh();
+        return quantileNanos[index] / 1e9;
+    }
+
+    private synchronized double maxSeconds() {
+        refresh();
+        return maxNanos / 1e9;
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        if (now - lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        lastRefresh = now;
+        interval = recorder.getIntervalHistogram(interval);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantileNanos[i] = interval.getValueAtPercentile(QUANTILES[i] * 100);
+        }
+        maxNanos = interval.getMaxValue();
+    }
+}
@@ -0,0 +1,535 @@
+package com.jobs.offline;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.EnvelopeCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于内存映射文件的离线消息存储
+ * 所有用户的消息追加写入同一个日志，日志由固定大小的段文件组成，每个段整体映射到内存，
+ * 追加只是一次内存拷贝，不需要系统调用，也不访问数据库；偏移量 = 段起始偏移量 + 段内位置，全局递增
+ * 记录格式：长度(4 字节，不含自身) + 类型(1 字节) + 时间戳(8 字节) + 用户名长度(2 字节) + 用户名 + 内容，
+ * 消息记录的内容为二进制信封，确认记录的内容为已确认的偏移量；长度最后写入，进程崩溃时写了一半的记录长度为 0，恢复时忽略
+ * 每个用户的待确认偏移量保存在内存中的信箱索引里，启动时扫描段文件重建
+ * 后台任务定期清理：过期的消息从索引中移除，最早的段在其中的消息都已确认或过期、或总大小超过上限时整段删除
+ * 日志目录只能由一个进程使用，启动时对目录加文件锁
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class MappedOfflineStore implements OfflineStore {
+
+    private static final byte KIND_MESSAGE = 1;
+
+    private static final byte KIND_ACK = 2;
+
+    //记录头：长度(4) + 类型(1) + 时间戳(8) + 用户名长度(2)
+    private static final int HEADER_SIZE = 15;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final long retentionMillis;
+
+    private final long maxBytes;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock directoryLock;
+
+    //按起始偏移量排列的段，最后一个是当前写入的段
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    //存储每个用户待确认的消息偏移量，key 是 username，信箱为空时移除
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    //当前写入的段，写入、换段都在 this 锁内进行
+    private Segment active;
+
+    private boolean closed;
+
+    private final LongAdder appended = new LongAdder();
+
+    private final LongAdder acked = new LongAdder();
+
+    //超过保留时间被移除的消息数
+    private final LongAdder expired = new LongAdder();
+
+    //因总大小超过上限被删除的未确认消息数
+    private final LongAdder discarded = new LongAdder();
+
+    private final ScheduledExecutorService compactExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "offline-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param directory       日志目录
+     * @param segmentSize     段文件大小（字节）
+     * @param retentionMillis 消息保留时间（毫秒）
+     * @param maxBytes        日志总大小上限（字节）
+     * @param compactInterval 清理间隔（毫秒）
+     */
+    public MappedOfflineStore(Path directory, int segmentSize, long retentionMillis, long maxBytes, long compactInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionMillis = retentionMillis;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            directoryLock = lockChannel.tryLock();
+            if (directoryLock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("离线消息目录 " + directory + " 正被其它进程使用，多个节点需要配置不同的目录");
+            }
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开离线消息目录 " + directory, e);
+        }
+        compactExecutor.scheduleWithFixedDelay(this::compact, compactInterval, compactInterval, TimeUnit.MILLISECONDS);
+        log.info("离线消息存储已打开：{}，段数 {}，待补发用户数 {}", directory, segments.size(), mailboxes.size());
+    }
+
+    @Override
+    public long append(String username, Envelope envelope) {
+        long timestamp = System.currentTimeMillis();
+        byte[] body = EnvelopeCodec.encodeBinary(envelope);
+        long offset;
+        //写入和加入信箱在同一个锁内完成，清理任务在锁内取得当前段后，之前写入的消息一定已在信箱中
+        synchronized (this) {
+            offset = write(KIND_MESSAGE, timestamp, username, body);
+            if (offset < 0) {
+                return -1;
+            }
+            mailboxes.compute(username, (key, mailbox) -> {
+                if (mailbox == null) {
+                    mailbox = new Mailbox();
+                }
+                mailbox.add(offset, timestamp);
+                return mailbox;
+            });
+        }
+        appended.increment();
+        return offset;
+    }
+
+    @Override
+    public List<StoredMessage> pending(String username) {
+        Mailbox mailbox = mailboxes.get(username);
+        if (mailbox == null) {
+            return new ArrayList<>();
+        }
+        long[] offsets = mailbox.snapshot(System.currentTimeMillis() - retentionMillis);
+        List<StoredMessage> messages = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            Envelope envelope = read(offset);
+            if (envelope != null) {
+                messages.add(new StoredMessage(offset, envelope));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public void ack(String username, long offset) {
+        int[] removed = new int[1];
+        mailboxes.computeIfPresent(username, (key, mailbox) -> {
+            removed[0] = mailbox.removeUpTo(offset);
+            return mailbox.isEmpty() ? null : mailbox;
+        });
+        if (removed[0] == 0) {
+            return;
+        }
+        acked.add(removed[0]);
+        //确认记录写在被确认的消息之后，段按顺序删除，重启时不会出现确认记录已删除而消息还在的情况
+        byte[] body = ByteBuffer.allocate(8).putLong(offset).array();
+        synchronized (this) {
+            write(KIND_ACK, System.currentTimeMillis(), username, body);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        long pendingMessages = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            pendingMessages += mailbox.size();
+        }
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.capacity;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", true);
+        stats.put("directory", directory.toString());
+        stats.put("segments", segments.size());
+        stats.put("bytes", bytes);
+        stats.put("users", mailboxes.size());
+        stats.put("pendingMessages", pendingMessages);
+        stats.put("appended", appended.sum());
+        stats.put("acked", acked.sum());
+        stats.put("expired", expired.sum());
+        stats.put("discarded", discarded.sum());
+        return stats;
+    }
+
+    /**
+     * 关闭存储，已写入的数据刷到磁盘
+     */
+    @Override
+    public void close() {
+        compactExecutor.shutdownNow();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.buffer.force();
+            for (Segment segment : segments.values()) {
+                closeQuietly(segment);
+            }
+            try {
+                directoryLock.release();
+                lockChannel.close();
+            } catch (IOException e) {
+                log.warn("释放离线消息目录锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 追加一条记录，调用方持有 this 锁
+     * @return 记录的偏移量，记录超过段大小或存储已关闭时返回 -1
+     */
+    private long write(byte kind, long timestamp, String username, byte[] body) {
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + user.length + body.length;
+        if (closed) {
+            return -1;
+        }
+        if (size > segmentSize || user.length > Short.MAX_VALUE) {
+            log.warn("用户 {} 的离线消息过大（{} 字节），未保存", username, size);
+            return -1;
+        }
+        try {
+            if (active.position + size > active.capacity) {
+                roll();
+            }
+        } catch (IOException e) {
+            log.error("创建离线消息段文件失败: {}", e.getMessage());
+            return -1;
+        }
+        int position = active.position;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(position + 4);
+        buffer.put(kind).putLong(timestamp).putShort((short) user.length).put(user).put(body);
+        //最后写入长度，长度非 0 的记录都是完整的
+        active.buffer.putInt(position, size - 4);
+        active.position = position + size;
+        active.lastTimestamp = timestamp;
+        return active.baseOffset + position;
+    }
+
+    private void roll() throws IOException {
+        long baseOffset = active.baseOffset + active.capacity;
+        Segment segment = openSegment(baseOffset);
+        segments.put(baseOffset, segment);
+        active = segment;
+    }
+
+    private Envelope read(long offset) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+        if (entry == null) {
+            return null;
+        }
+        Segment segment = entry.getValue();
+        int position = (int) (offset - segment.baseOffset);
+        if (position >= segment.capacity) {
+            return null;
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int length = buffer.getInt(position);
+        buffer.position(position + 4 + 1 + 8);
+        int userLength = buffer.getShort();
+        buffer.position(buffer.position() + userLength);
+        buffer.limit(position + 4 + length);
+        try {
+            return EnvelopeCodec.decodeBinary(buffer.slice());
+        } catch (IllegalArgumentException e) {
+            log.warn("离线消息 {} 无法解析: {}", offset, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 启动时按顺序扫描段文件，重建每个用户的信箱
+     */
+    private void recover() throws IOException {
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        baseOffsets.sort(null);
+        for (long baseOffset : baseOffsets) {
+            Segment segment = openSegment(baseOffset);
+            scan(segment);
+            segments.put(baseOffset, segment);
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null) {
+            active = openSegment(0);
+            segments.put(0L, active);
+        }
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + 4 <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > segment.capacity) {
+                break;
+            }
+            buffer.position(position + 4);
+            byte kind = buffer.get();
+            long timestamp = buffer.getLong();
+            byte[] user = new byte[buffer.getShort()];
+            buffer.get(user);
+            String username = new String(user, StandardCharsets.UTF_8);
+            long offset = segment.baseOffset + position;
+            if (kind == KIND_MESSAGE) {
+                mailboxes.computeIfAbsent(username, key -> new Mailbox()).add(offset, timestamp);
+            } else if (kind == KIND_ACK) {
+                long ackedOffset = buffer.getLong();
+                Mailbox mailbox = mailboxes.get(username);
+                if (mailbox != null) {
+                    mailbox.removeUpTo(ackedOffset);
+                    if (mailbox.isEmpty()) {
+                        mailboxes.remove(username);
+                    }
+                }
+            }
+            segment.lastTimestamp = timestamp;
+            position += 4 + length;
+        }
+        segment.position = position;
+    }
+
+    private Segment openSegment(long baseOffset) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //已有段文件按实际大小映射，修改段大小配置不影响旧文件
+        int capacity = (int) Math.max(channel.size(), segmentSize);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new Segment(baseOffset, path, channel, buffer, capacity);
+    }
+
+    /**
+     * 移除过期的消息，从最早的段开始删除不再需要的段
+     */
+    private void compact() {
+        try {
+            long now = System.currentTimeMillis();
+            long expireBefore = now - retentionMillis;
+            //先取得当前段再统计信箱：之前写入的消息都已加入信箱，之后写入的消息在当前段或更新的段中，本次不会删除
+            Segment current;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                current = active;
+                current.buffer.force();
+            }
+            long firstPending = Long.MAX_VALUE;
+            for (String username : mailboxes.keySet()) {
+                Mailbox mailbox = mailboxes.computeIfPresent(username, (key, box) -> {
+                    expired.add(box.removeOlderThan(expireBefore));
+                    return box.isEmpty() ? null : box;
+                });
+                if (mailbox != null) {
+                    firstPending = Math.min(firstPending, mailbox.first());
+                }
+            }
+            long totalBytes = 0;
+            for (Segment segment : segments.values()) {
+                totalBytes += segment.capacity;
+            }
+            for (Segment segment : segments.values()) {
+                if (segment == current) {
+                    break;
+                }
+                long endOffset = segment.baseOffset + segment.capacity;
+                boolean consumed = endOffset <= firstPending;
+                boolean outdated = segment.lastTimestamp < expireBefore;
+                boolean overLimit = totalBytes > maxBytes;
+                if (!consumed && !outdated && !overLimit) {
+                    break;
+                }
+                if (!consumed) {
+                    dropBefore(endOffset, overLimit && !outdated);
+                }
+                segments.remove(segment.baseOffset);
+                closeQuietly(segment);
+                Files.deleteIfExists(segment.path);
+                totalBytes -= segment.capacity;
+                log.info("删除离线消息段 {}", segment.path.getFileName());
+            }
+        } catch (Exception e) {
+            log.error("清理离线消息失败: {}", e.getMessage());
+        }
+    }
+
+    //段被删除前移除其中尚未确认的消息
+    private void dropBefore(long endOffset, boolean countAsDiscarded) {
+        for (String username : mailboxes.keySet()) {
+            mailboxes.computeIfPresent(username, (key, mailbox) -> {
+                int removed = mailbox.removeUpTo(endOffset - 1);
+                (countAsDiscarded ? discarded : expired).add(removed);
+                return mailbox.isEmpty() ? null : mailbox;
+            });
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("关闭离线消息段 {} 失败: {}", segment.path.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 一个段文件，映射的内存在通道关闭后仍然有效，直到被回收
+     */
+    private static final class Segment {
+        private final long baseOffset;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+
+        //写入位置，只在 store 锁内修改
+        private int position;
+
+        //段中最后一条记录的时间戳，用于判断整段是否过期
+        private volatile long lastTimestamp;
+
+        private Segment(long baseOffset, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.baseOffset = baseOffset;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * 单个用户的信箱索引，按偏移量递增保存待确认的消息，用两个 long 数组存储，不为每条消息创建对象
+     */
+    private static final class Mailbox {
+        private long[] offsets = new long[4];
+        private long[] timestamps = new long[4];
+        private int head;
+        private int tail;
+
+        private synchronized void add(long offset, long timestamp) {
+            if (tail == offsets.length) {
+                grow();
+            }
+            //追加在 store 锁内按偏移量顺序进行，重启扫描同样按顺序，这里保留从尾部向前找插入位置作为兜底
+            int index = tail;
+            while (index > head && offsets[index - 1] > offset) {
+                offsets[index] = offsets[index - 1];
+                timestamps[index] = timestamps[index - 1];
+                index--;
+            }
+            offsets[index] = offset;
+            timestamps[index] = timestamp;
+            tail++;
+        }
+
+        private void grow() {
+            int size = tail - head;
+            if (head > 0 && size < offsets.length / 2) {
+                System.arraycopy(offsets, head, offsets, 0, size);
+                System.arraycopy(timestamps, head, timestamps, 0, size);
+            } else {
+                offsets = Arrays.copyOfRange(offsets, head, head + offsets.length * 2);
+                timestamps = Arrays.copyOfRange(timestamps, head, head + timestamps.length * 2);
+            }
+            head = 0;
+            tail = size;
+        }
+
+        private synchronized int removeUpTo(long offset) {
+            int removed = 0;
+            while (head < tail && offsets[head] <= offset) {
+                head++;
+                removed++;
+            }
+            return removed;
+        }
+
+        private synchronized int removeOlderThan(long timestamp) {
+            int removed = 0;
+            while (head < tail && timestamps[head] < timestamp) {
+                head++;
+                removed++;
+            }
+            return removed;
+        }
+
+        private synchronized long[] snapshot(long notBefore) {
+            long[] result = new long[tail - head];
+            int count = 0;
+            for (int i = head; i < tail; i++) {
+                if (timestamps[i] >= notBefore) {
+                    result[count++] = offsets[i];
+                }
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+
+        private synchronized long first() {
+            return head < tail ? offsets[head] : Long.MAX_VALUE;
+        }
+
+        private synchronized int size() {
+            return tail - head;
+        }
+
+        private synchronized boolean isEmpty() {
+            return head == tail;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.jobs.offline;
+
+import com.jobs.protocol.Envelope;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关闭离线存储时使用，不保存任何消息
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class NoopOfflineStore implements OfflineStore {
+
+    @Override
+    public long append(String username, Envelope envelope) {
+        return -1;
+    }
+
+    @Override
+    public List<StoredMessage> pending(String username) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void ack(String username, long offset) {
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Collections.singletonMap("enabled", false);
+    }
+}
@@ -0,0 +1,43 @@
+package com.jobs.offline;
+
+import com.jobs.protocol.Envelope;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 离线消息存储 SPI
+ * 用户不在线时发给该用户的消息先存入该用户的信箱，重新连接后补发，客户端确认（写出成功）后才从信箱中移除，
+ * 确认前断开的消息下次连接时会再次补发，保证至少送达一次
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public interface OfflineStore {
+
+    /**
+     * 把消息存入用户的信箱
+     * @return 消息在存储中的偏移量，存储失败时返回 -1
+     */
+    long append(String username, Envelope envelope);
+
+    /**
+     * 用户信箱中尚未确认且未过期的消息，按存入顺序排列
+     */
+    List<StoredMessage> pending(String username);
+
+    /**
+     * 确认用户已收到偏移量不大于 offset 的所有消息
+     */
+    void ack(String username, long offset);
+
+    /**
+     * 存储统计信息
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * 关闭存储，释放文件等资源
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,29 @@
+package com.jobs.offline;
+
+import com.jobs.protocol.Envelope;
+
+/**
+ * 离线存储中的一条消息
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class StoredMessage {
+
+    //消息在存储中的偏移量，同一用户的消息偏移量递增
+    private final long offset;
+
+    private final Envelope envelope;
+
+    public StoredMessage(long offset, Envelope envelope) {
+        this.offset = offset;
+        this.envelope = envelope;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+}
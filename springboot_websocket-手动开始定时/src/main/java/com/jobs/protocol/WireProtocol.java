@@ -0,0 +1,51 @@
+package com.jobs.protocol;
+
+/**
+ * 客户端与服务端之间的传输格式，建立连接时通过 WebSocket 子协议协商
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public enum WireProtocol {
+
+    /**
+     * 未指定子协议，只发送消息内容文本，兼容旧客户端
+     */
+    LEGACY(""),
+
+    /**
+     * 信封的紧凑二进制编码，以二进制帧发送
+     */
+    BINARY(WireProtocol.BINARY_SUBPROTOCOL),
+
+    /**
+     * 信封的 JSON 编码，以文本帧发送
+     */
+    JSON(WireProtocol.JSON_SUBPROTOCOL);
+
+    public static final String BINARY_SUBPROTOCOL = "v1.binary";
+
+    public static final String JSON_SUBPROTOCOL = "v1.json";
+
+    private final String subprotocol;
+
+    WireProtocol(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    /**
+     * 根据协商出的子协议获取传输格式，未协商或不认识的子协议按 LEGACY 处理
+     */
+    public static WireProtocol fromSubprotocol(String subprotocol) {
+        if (BINARY_SUBPROTOCOL.equals(subprotocol)) {
+            return BINARY;
+        }
+        if (JSON_SUBPROTOCOL.equals(subprotocol)) {
+            return JSON;
+        }
+        return LEGACY;
+    }
+}
@@ -0,0 +1,241 @@
+package com.jobs.scheduler;
+
+import com.jobs.concurrent.PartitionedExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * 用户级定时任务管理
+ * 每个用户一个轻量的任务对象，挂在共享的时间轮上，到期执行后再计算下一次触发时间重新挂上，
+ * 不为每个用户创建 ScheduledFuture，几十万用户的定时任务也只占用一个时间轮线程
+ * 时间轮线程只负责触发，到期的任务按用户名提交到分区执行器，同一用户的推送依次执行，不同用户的推送分散到各分区并行，
+ * 提交时带上计划触发时间，分区执行器统计的调度延迟包含时间轮的触发误差
+ * 任务触发时先检查用户是否仍启用定时任务，已停用（如用户已离线）的任务自行取消，不会一直空转
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class UserScheduleManager {
+
+    //执行推送时统计使用的任务名
+    private static final String JOB_NAME = "userSchedule";
+
+    private final HashedWheelTimer timer;
+
+    private final PartitionedExecutor executor;
+
+    //cron 任务相对 cron 触发时刻的错峰延迟（毫秒），按用户名计算
+    private final ToLongFunction<String> cronOffset;
+
+    //用户是否仍启用定时任务
+    private final Predicate<String> active;
+
+    //存储每个用户的定时任务，key 是 username
+    private final ConcurrentHashMap<String, UserJob> jobs = new ConcurrentHashMap<>();
+
+    public UserScheduleManager(HashedWheelTimer timer, PartitionedExecutor executor, ToLongFunction<String> cronOffset,
+                               Predicate<String> active) {
+        this.timer = timer;
+        this.executor = executor;
+        this.cronOffset = cronOffset;
+        this.active = active;
+    }
+
+    /**
+     * 为用户创建定时任务，已存在的任务会被替换
+     * @param period       固定频率的周期（毫秒），cron 为空时生效
+     * @param initialDelay 首次执行的延迟（毫秒），cron 为空时生效
+     * @param cron         cron 表达式，不为空时按 cron 计算每次触发时间
+     * @param action       每次触发时执行的动作
+     */
+    public void schedule(String username, long period, long initialDelay, String cron, Runnable action) {
+        CronExpression expression = parse(period, cron);
+        UserJob job = new UserJob(username, expression != null ? 0 : period, expression, action);
+        UserJob previous = jobs.put(username, job);
+        if (previous != null) {
+            previous.cancel();
+        }
+        job.start(Math.max(0, initialDelay));
+        log.info("用户 {} 的定时任务已加入时间轮：{}", username, job.describe());
+    }
+
+    /**
+     * 检查定时任务参数，不合法时抛出 IllegalArgumentException，不修改任何状态
+     * 启用用户的定时任务前先检查，避免参数错误时用户已被标记为启用却没有任务
+     */
+    public void validate(long period, String cron) {
+        parse(period, cron);
+    }
+
+    //cron 不为空时解析 cron 表达式，否则检查周期，返回 null 表示固定频率
+    private static CronExpression parse(long period, String cron) {
+        if (cron != null && !cron.trim().isEmpty()) {
+            return CronExpression.parse(cron.trim());
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("定时任务周期必须大于 0");
+        }
+        return null;
+    }
+
+    /**
+     * 取消用户的定时任务
+     * @return 是否存在并取消了任务
+     */
+    public boolean cancel(String username) {
+        UserJob job = jobs.remove(username);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        return true;
+    }
+
+    /**
+     * 用户已停用定时任务时取消其任务，检查与取消在同一个原子操作中完成，与同一用户的创建、替换互斥
+     * 启用后再创建任务之间用户可能已离线，创建后调用一次，保证不会给已停用的用户留下任务
+     * @return 是否取消了任务
+     */
+    public boolean cancelIfInactive(String username) {
+        boolean[] cancelled = new boolean[1];
+        jobs.computeIfPresent(username, (key, job) -> {
+            if (active.test(key)) {
+                return job;
+            }
+            job.cancel();
+            cancelled[0] = true;
+            return null;
+        });
+        return cancelled[0];
+    }
+
+    /**
+     * 获取用户定时任务的描述，没有任务时返回 null
+     */
+    public String describe(String username) {
+        UserJob job = jobs.get(username);
+        return job != null ? job.describe() : null;
+    }
+
+    /**
+     * 已创建的用户定时任务数
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * 时间轮中等待触发的任务数
+     */
+    public int pendingTimeouts() {
+        return timer.pendingTimeouts();
+    }
+
+    /**
+     * 停止时间轮
+     */
+    public void stop() {
+        jobs.clear();
+        timer.stop();
+    }
+
+    /**
+     * 单个用户的定时任务
+     */
+    private final class UserJob implements Runnable {
+        private final String username;
+        private final long periodMillis;
+        private final CronExpression cron;
+        private final Runnable action;
+
+        //下一次计划触发时间（纳秒），固定频率模式下按计划时间累加，避免执行耗时造成漂移
+        private volatile long nextFireNanos;
+        private volatile HashedWheelTimer.Timeout timeout;
+        private volatile boolean cancelled;
+
+        private UserJob(String username, long periodMillis, CronExpression cron, Runnable action) {
+            this.username = username;
+            this.periodMillis = periodMillis;
+            this.cron = cron;
+            this.action = action;
+        }
+
+        private void start(long initialDelay) {
+            if (cron != null) {
+                scheduleNext();
+            } else {
+                nextFireNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelay);
+                timeout = timer.newTimeout(this, initialDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            executor.execute(JOB_NAME, username, nextFireNanos, this::fire);
+        }
+
+        private void fire() {
+            if (cancelled) {
+                return;
+            }
+            if (!active.test(username)) {
+                log.info("用户 {} 已停用定时任务，取消时间轮上的任务", username);
+                cancel();
+                jobs.remove(username, this);
+                return;
+            }
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error("用户 {} 的定时任务执行失败: {}", username, e.getMessage());
+            } finally {
+                scheduleNext();
+            }
+        }
+
+        private void scheduleNext() {
+            if (cancelled) {
+                return;
+            }
+            long delayNanos;
+            if (cron != null) {
+                LocalDateTime now = LocalDateTime.now();
+                LocalDateTime next = cron.next(now);
+                if (next == null) {
+                    log.info("用户 {} 的 cron 定时任务没有下一次触发时间，任务结束", username);
+                    jobs.remove(username, this);
+                    return;
+                }
+                delayNanos = Duration.between(now, next).toNanos()
+                        + TimeUnit.MILLISECONDS.toNanos(cronOffset.applyAsLong(username));
+                nextFireNanos = System.nanoTime() + delayNanos;
+            } else {
+                nextFireNanos += TimeUnit.MILLISECONDS.toNanos(periodMillis);
+                delayNanos = nextFireNanos - System.nanoTime();
+            }
+            timeout = timer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            HashedWheelTimer.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        private String describe() {
+            return cron != null ? "cron " + cron : "每 " + periodMillis + " 毫秒";
+        }
+    }
+}
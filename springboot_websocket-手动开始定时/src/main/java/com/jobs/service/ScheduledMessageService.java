@@ -1,17 +1,26 @@
 package com.jobs.service;
 
+import com.jobs.concurrent.PartitionedExecutor;
+import com.jobs.config.WebSocketProperties;
+import com.jobs.dto.UserScheduleDTO;
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.MessageType;
+import com.jobs.scheduler.HashedWheelTimer;
+import com.jobs.scheduler.UserScheduleManager;
+import com.jobs.websocket.TickSharding;
+import com.jobs.websocket.UserPage;
 import com.jobs.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 定时消息推送服务
@@ -24,20 +33,34 @@ public class ScheduledMessageService {
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
-    private TaskScheduler taskScheduler;
-    private ScheduledFuture<?> scheduledTask;
-    private boolean isScheduledRunning = false;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+    
+    @Autowired
+    private TickSharding tickSharding;
+    
+    // 执行用户级定时任务的分区执行器，同一用户的推送总在同一个分区中依次执行
+    @Autowired
+    private PartitionedExecutor jobExecutor;
+    // 用户级定时任务，挂在时间轮上，到期后由时间轮线程交给 jobExecutor 执行推送
+    private UserScheduleManager userScheduleManager;
+    // 全局开关，关闭时用户级定时任务照常计时但不推送
+    private volatile boolean isScheduledRunning = false;
 
     @PostConstruct
     public void init() {
-        // 初始化任务调度器
-        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(1);
-        scheduler.setThreadNamePrefix("scheduled-message-");
-        scheduler.setWaitForTasksToCompleteOnShutdown(true);
-        scheduler.setAwaitTerminationSeconds(60);
-        scheduler.initialize();
-        this.taskScheduler = scheduler;
+        // 初始化用户级定时任务的时间轮，到期的任务只是提交到 jobExecutor，直接在时间轮线程中分发
+        WebSocketProperties.UserSchedule config = webSocketProperties.getUserSchedule();
+        HashedWheelTimer timer = new HashedWheelTimer("user-schedule-wheel",
+                config.getTickDuration(), TimeUnit.MILLISECONDS, config.getWheelSize(), Runnable::run);
+        // cron 任务按用户所在时间片错开触发，避免同一 cron 的用户在同一时刻集中推送
+        this.userScheduleManager = new UserScheduleManager(timer, jobExecutor, tickSharding::delayMillis,
+                WebSocketServer::getUserScheduledTaskStatus);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        userScheduleManager.stop();
     }
 
     /**
@@ -49,8 +72,7 @@ public class ScheduledMessageService {
             return;
         }
         
-        // 每30秒执行一次定时推送
-        scheduledTask = taskScheduler.scheduleAtFixedRate(this::sendScheduledMessage, 3000);
+        // 各用户的定时任务由时间轮按各自的周期触发，这里只打开全局开关
         isScheduledRunning = true;
         log.info("定时推送任务已启动");
     }
@@ -64,10 +86,6 @@ public class ScheduledMessageService {
             return;
         }
         
-        if (scheduledTask != null) {
-            scheduledTask.cancel(false);
-            scheduledTask = null;
-        }
         isScheduledRunning = false;
         log.info("定时推送任务已停止");
     }
@@ -91,14 +109,18 @@ public class ScheduledMessageService {
      * 每30秒向所有启用了定时任务的用户推送一次消息
      */
     public void sendScheduledMessage() {
+        jobExecutor.execute("sendScheduledMessage", this::pushScheduledMessage);
+    }
+
+    private void pushScheduledMessage() {
         int scheduledUserCount = WebSocketServer.getScheduledUserCount();
         
         if (scheduledUserCount > 0) {
-            String currentTime = LocalDateTime.now().format(FORMATTER);
-            String message = String.format("【定时推送】当前时间：%s，启用定时任务的用户数：%d", currentTime, scheduledUserCount);
+            String message = formatScheduledMessage(scheduledUserCount);
             
             log.info("开始执行定时推送，启用定时任务的用户数：{}", scheduledUserCount);
-            WebSocketServer.sendMessageToScheduledUsers(message);
+            WebSocketServer.sendMessageToScheduledUsers(message)
+                    .thenAccept(result -> log.info("定时推送完成：{}", result));
         } else {
             log.info("当前无用户启用定时任务，跳过定时推送");
         }
@@ -108,12 +130,17 @@ public class ScheduledMessageService {
      * 每天上午9点推送早安消息
      */
     public void sendMorningMessage() {
+        jobExecutor.execute("sendMorningMessage", this::pushMorningMessage);
+    }
+
+    private void pushMorningMessage() {
         int onlineCount = WebSocketServer.getOnlineUserCount();
         
         if (onlineCount > 0) {
             String message = "【早安推送】早上好！新的一天开始了，祝您工作愉快！";
             log.info("发送早安消息，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
+            WebSocketServer.sendMessageToAll(Envelope.of(MessageType.NOTICE, message), true)
+                    .thenAccept(result -> log.info("早安消息推送完成：{}", result));
         }
     }
 
@@ -121,12 +148,17 @@ public class ScheduledMessageService {
      * 每天下午6点推送下班提醒
      */
     public void sendEveningMessage() {
+        jobExecutor.execute("sendEveningMessage", this::pushEveningMessage);
+    }
+
+    private void pushEveningMessage() {
         int onlineCount = WebSocketServer.getOnlineUserCount();
         
         if (onlineCount > 0) {
             String message = "【下班提醒】辛苦了！今天的工作即将结束，记得休息哦！";
             log.info("发送下班提醒，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
+            WebSocketServer.sendMessageToAll(Envelope.of(MessageType.NOTICE, message), true)
+                    .thenAccept(result -> log.info("下班提醒推送完成：{}", result));
         }
     }
 
@@ -134,25 +166,44 @@ public class ScheduledMessageService {
      * 手动触发定时推送（用于测试）
      */
     public void sendManualMessage(String customMessage) {
-        int onlineCount = WebSocketServer.getOnlineUserCount();
-        
-        if (onlineCount > 0) {
-            String message = "【手动推送】" + customMessage;
-            log.info("发送手动推送消息，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
-        } else {
-            log.warn("当前无在线用户，无法发送手动推送消息");
-        }
+        //其它节点上可能有在线用户，本节点无在线用户时也要经集群总线发出
+        String message = "【手动推送】" + customMessage;
+        log.info("发送手动推送消息，本节点在线用户数：{}", WebSocketServer.getOnlineUserCount());
+        WebSocketServer.sendMessageToCluster(MessageType.BROADCAST, message)
+                .thenAccept(result -> log.info("手动推送完成（本节点）：{}", result));
     }
     
     // 用户级定时任务管理方法
     
     /**
-     * 启动指定用户的定时任务
+     * 启动指定用户的定时任务，使用默认周期
      */
     public void startUserScheduledTask(String username) {
+        startUserScheduledTask(username, null);
+    }
+    
+    /**
+     * 按指定的周期、首次延迟或 cron 表达式启动指定用户的定时任务
+     */
+    public void startUserScheduledTask(String username, UserScheduleDTO schedule) {
+        long period = webSocketProperties.getUserSchedule().getDefaultPeriod();
+        long initialDelay = 0;
+        String cron = null;
+        if (schedule != null) {
+            period = schedule.getPeriod() != null ? schedule.getPeriod() : period;
+            initialDelay = schedule.getInitialDelay() != null ? schedule.getInitialDelay() : initialDelay;
+            cron = schedule.getCron();
+        }
+        // 先检查参数再启用，参数错误时用户不会被标记为启用、订阅定时频道，已有的任务也保持不变
+        userScheduleManager.validate(period, cron);
         WebSocketServer.startUserScheduledTask(username);
         
+        if (WebSocketServer.getUserScheduledTaskStatus(username)) {
+            userScheduleManager.schedule(username, period, initialDelay, cron, () -> sendUserScheduledMessage(username));
+            // 检查状态与创建任务之间用户可能已离线，离线时的取消发生在任务创建之前，这里再检查一次
+            userScheduleManager.cancelIfInactive(username);
+        }
+        
         // 如果全局定时任务未启动，且有用户启用了定时任务，则启动全局定时任务
         if (!isScheduledRunning && WebSocketServer.getScheduledUserCount() > 0) {
             startScheduledTask();
@@ -164,6 +215,7 @@ public class ScheduledMessageService {
      */
     public void stopUserScheduledTask(String username) {
         WebSocketServer.stopUserScheduledTask(username);
+        userScheduleManager.cancel(username);
         
         // 如果没有用户启用定时任务，停止全局定时任务
         if (isScheduledRunning && WebSocketServer.getScheduledUserCount() == 0) {
@@ -171,6 +223,14 @@ public class ScheduledMessageService {
         }
     }
     
+    /**
+     * 用户所有设备都已断开，注销时已停用其定时任务，取消时间轮上的任务
+     * 期间用户重新连接并再次启用时保留新任务
+     */
+    public void userOffline(String username) {
+        userScheduleManager.cancelIfInactive(username);
+    }
+    
     /**
      * 获取指定用户的定时任务状态
      */
@@ -178,6 +238,24 @@ public class ScheduledMessageService {
         return WebSocketServer.getUserScheduledTaskStatus(username);
     }
     
+    /**
+     * 用户级定时任务触发时调用，向该用户推送一次定时消息
+     */
+    private void sendUserScheduledMessage(String username) {
+        if (!isScheduledRunning) {
+            return;
+        }
+        WebSocketServer.sendScheduledStatusToUser(username, formatScheduledMessage(WebSocketServer.getScheduledUserCount()));
+    }
+
+    /**
+     * 生成定时推送的消息内容，全局定时推送和用户级定时推送共用
+     */
+    public static String formatScheduledMessage(int scheduledUserCount) {
+        String currentTime = LocalDateTime.now().format(FORMATTER);
+        return String.format("【定时推送】当前时间：%s，启用定时任务的用户数：%d", currentTime, scheduledUserCount);
+    }
+    
     /**
      * 向指定用户发送定时消息
      */
@@ -186,13 +264,13 @@ public class ScheduledMessageService {
     }
     
     /**
-     * 获取用户级定时任务状态信息
+     * 获取用户级定时任务状态信息，在线用户和启用了定时任务的用户各返回第一页，最多 limit 个
      */
-    public Object getUserScheduledTaskInfo(String username) {
+    public Object getUserScheduledTaskInfo(String username, int limit) {
         int onlineCount = WebSocketServer.getOnlineUserCount();
-        String[] onlineUsers = WebSocketServer.getOnlineUsers();
+        UserPage onlineUsers = WebSocketServer.getOnlineUsers(null, limit, null);
         int scheduledUserCount = WebSocketServer.getScheduledUserCount();
-        String[] scheduledUsers = WebSocketServer.getScheduledUsers();
+        UserPage scheduledUsers = WebSocketServer.getScheduledUsers(null, limit, null);
         String currentTime = LocalDateTime.now().format(FORMATTER);
         boolean userScheduledStatus = WebSocketServer.getUserScheduledTaskStatus(username);
         String message = String.format("用户 %s 的定时任务状态：%s", username, userScheduledStatus ? "已启用" : "已停用");
@@ -200,11 +278,15 @@ public class ScheduledMessageService {
         // 使用Map来避免匿名类的字段引用问题
         Map<String, Object> result = new HashMap<>();
         result.put("onlineCount", onlineCount);
-        result.put("onlineUsers", onlineUsers);
+        result.put("onlineUsers", onlineUsers.getUsers());
+        result.put("onlineUsersNextCursor", onlineUsers.getNextCursor());
         result.put("scheduledUserCount", scheduledUserCount);
-        result.put("scheduledUsers", scheduledUsers);
+        result.put("scheduledUsers", scheduledUsers.getUsers());
+        result.put("scheduledUsersNextCursor", scheduledUsers.getNextCursor());
         result.put("currentTime", currentTime);
         result.put("userScheduledStatus", userScheduledStatus);
+        result.put("userSchedule", userScheduleManager.describe(username));
+        result.put("pendingTimers", userScheduleManager.pendingTimeouts());
         result.put("message", message);
         
         return result;
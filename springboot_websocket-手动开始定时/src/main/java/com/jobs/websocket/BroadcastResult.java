@@ -0,0 +1,62 @@
+package com.jobs.websocket;
+
+/**
+ * 一次广播的汇总结果
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class BroadcastResult {
+
+    //本次广播的接收用户数
+    private final int recipients;
+
+    //发送成功的数量
+    private final int succeeded;
+
+    //发送失败（含超时）的数量
+    private final int failed;
+
+    //发出前被同一合并键的新消息替换的数量，不计入失败
+    private final int superseded;
+
+    //从开始广播到最后一个会话写完的耗时（毫秒）
+    private final long durationMillis;
+
+    public BroadcastResult(int recipients, int succeeded, int failed, long durationMillis) {
+        this(recipients, succeeded, failed, 0, durationMillis);
+    }
+
+    public BroadcastResult(int recipients, int succeeded, int failed, int superseded, long durationMillis) {
+        this.recipients = recipients;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.superseded = superseded;
+        this.durationMillis = durationMillis;
+    }
+
+    public int getRecipients() {
+        return recipients;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getSuperseded() {
+        return superseded;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastResult{recipients=" + recipients + ", succeeded=" + succeeded
+                + ", failed=" + failed + ", superseded=" + superseded + ", durationMillis=" + durationMillis + "}";
+    }
+}
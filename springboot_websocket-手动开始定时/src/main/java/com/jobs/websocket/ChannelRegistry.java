@@ -0,0 +1,128 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 频道订阅索引
+ * 维护 频道 -> 订阅会话 的倒排索引，发布到频道时只遍历该频道的订阅者，耗时与订阅者数成正比，与在线总人数无关；
+ * 每个会话同时记录自己订阅的频道，会话关闭时只需从这些频道中移除；
+ * 关闭时先标记会话再退订，与关闭并发的订阅在加入后看到标记会自行撤销，不会把已关闭的会话留在索引中
+ * 以 $ 开头的频道为服务端内部频道，客户端不能订阅
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class ChannelRegistry {
+
+    //服务端内部频道的前缀
+    public static final String INTERNAL_PREFIX = "$";
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //存储频道与订阅会话的对应关系，key 是频道名，频道没有订阅者时移除
+    private final ConcurrentHashMap<String, Set<ClientSession>> channels = new ConcurrentHashMap<>();
+
+    /**
+     * 校验客户端提交的频道名
+     * @return 不合法的原因，合法时返回 null
+     */
+    public String validate(ClientSession client, String channel) {
+        WebSocketProperties.Channel properties = webSocketProperties.getChannel();
+        if (channel == null || channel.trim().isEmpty()) {
+            return "频道名不能为空";
+        }
+        if (channel.length() > properties.getMaxNameLength()) {
+            return "频道名长度不能超过 " + properties.getMaxNameLength();
+        }
+        if (channel.startsWith(INTERNAL_PREFIX)) {
+            return "不能订阅内部频道";
+        }
+        if (!client.getChannels().contains(channel) && client.getChannels().size() >= properties.getMaxPerSession()) {
+            return "每个会话最多订阅 " + properties.getMaxPerSession() + " 个频道";
+        }
+        return null;
+    }
+
+    /**
+     * 订阅频道
+     * @return 是否为新订阅，会话已退订所有频道时返回 false
+     */
+    public boolean subscribe(String channel, ClientSession client) {
+        if (client.isChannelsReleased() || !client.getChannels().add(channel)) {
+            return false;
+        }
+        //在 compute 中加入订阅者，与移除空频道互斥，不会加入一个已被移除的集合
+        channels.compute(channel, (key, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = ConcurrentHashMap.newKeySet();
+            }
+            subscribers.add(client);
+            return subscribers;
+        });
+        //加入后再检查标记：标记在加入之后才设置时，unsubscribeAll 一定能看到这次订阅
+        if (client.isChannelsReleased()) {
+            unsubscribe(channel, client);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 退订频道
+     * @return 是否存在该订阅
+     */
+    public boolean unsubscribe(String channel, ClientSession client) {
+        if (!client.getChannels().remove(channel)) {
+            return false;
+        }
+        channels.computeIfPresent(channel, (key, subscribers) -> {
+            subscribers.remove(client);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        return true;
+    }
+
+    /**
+     * 会话关闭或被替换时退订它的所有频道
+     */
+    public void unsubscribeAll(ClientSession client) {
+        client.releaseChannels();
+        for (String channel : client.getChannels()) {
+            unsubscribe(channel, client);
+        }
+    }
+
+    /**
+     * 频道订阅者的弱一致性视图，没有订阅者时返回空集合
+     */
+    public Collection<ClientSession> subscribers(String channel) {
+        Set<ClientSession> subscribers = channels.get(channel);
+        return subscribers != null ? subscribers : Collections.emptySet();
+    }
+
+    /**
+     * 频道订阅者数量
+     */
+    public int subscriberCount(String channel) {
+        return subscribers(channel).size();
+    }
+
+    /**
+     * 各频道的订阅者数量
+     */
+    public Map<String, Integer> getStats() {
+        Map<String, Integer> stats = new HashMap<>();
+        channels.forEach((channel, subscribers) -> stats.put(channel, subscribers.size()));
+        return stats;
+    }
+}
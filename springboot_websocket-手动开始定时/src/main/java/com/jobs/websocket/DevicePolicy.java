@@ -0,0 +1,19 @@
+package com.jobs.websocket;
+
+/**
+ * 同一用户的连接数达到设备数上限后，新连接到来时的处理策略
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public enum DevicePolicy {
+
+    /**
+     * 关闭该用户最早建立的连接，接受新连接
+     */
+    EVICT_OLDEST,
+
+    /**
+     * 拒绝并关闭新连接，已有连接不受影响
+     */
+    REJECT_NEW
+}
@@ -0,0 +1,24 @@
+package com.jobs.websocket;
+
+/**
+ * 会话发送队列写满后的处理策略
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃最旧的一条待发送消息，为新消息腾出位置
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃全部积压消息，只保留最新的一条
+     */
+    COALESCE,
+
+    /**
+     * 断开消费过慢的客户端
+     */
+    DISCONNECT
+}
@@ -0,0 +1,24 @@
+package com.jobs.websocket;
+
+import javax.websocket.SendResult;
+import java.io.IOException;
+
+/**
+ * 消息在发出前被同一合并键的新消息替换
+ * 合并是状态类消息的预期行为，回调据此区分替换与真正的发送失败，不计入失败数、不记录失败日志
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class SupersededException extends IOException {
+
+    public SupersededException(String message) {
+        super(message);
+    }
+
+    /**
+     * 发送结果是否表示消息被新消息替换
+     */
+    public static boolean isSuperseded(SendResult result) {
+        return !result.isOK() && result.getException() instanceof SupersededException;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jobs.websocket;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户名列表的版本化快照，供管理接口分页查询
+ * 成员变化（用户上线、下线，启用、停用定时任务）时只递增版本号，不复制；读取时发现快照版本落后才从源集合复制并排序一次，
+ * 成员没有变化的重复读取直接复用同一个快照，多个读取方同时发现快照过期时只有一个重建
+ * 版本号必须在源集合修改完成之后递增，重建时先读版本号再复制，复制期间发生的变化会让下一次读取再次重建
+ * 分页以上一页最后一个用户名为游标，翻页过程中成员发生变化时，未变化的用户不会重复也不会漏掉
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class UsernameIndex {
+
+    //每页最多返回的用户数
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String[] NO_USERNAMES = new String[0];
+
+    private final Collection<String> source;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Snapshot current = new Snapshot(0, NO_USERNAMES);
+
+    /**
+     * @param source 用户名集合的实时视图，如 ConcurrentHashMap 的 keySet
+     */
+    public UsernameIndex(Collection<String> source) {
+        this.source = source;
+    }
+
+    /**
+     * 源集合的成员已经变化
+     */
+    public void changed() {
+        version.incrementAndGet();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 按用户名顺序取 cursor 之后的最多 limit 个用户名
+     * @param cursor       上一页的 nextCursor，为空时从头开始
+     * @param knownVersion 调用方已有列表的版本号，从头查询且与当前版本一致时不返回用户名，为 null 时总是返回；
+     *                     带 cursor 的翻页请求总是返回该页，否则未变化的列表无法翻到下一页
+     */
+    public UserPage page(String cursor, int limit, Long knownVersion) {
+        boolean firstPage = cursor == null || cursor.isEmpty();
+        if (firstPage && knownVersion != null && knownVersion == version.get()) {
+            return UserPage.unchanged(knownVersion, source.size());
+        }
+        Snapshot snapshot = snapshot();
+        String[] usernames = snapshot.usernames;
+        int from = 0;
+        if (!firstPage) {
+            int index = Arrays.binarySearch(usernames, cursor);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        int to = Math.min(usernames.length, from + Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        String nextCursor = to < usernames.length ? usernames[to - 1] : null;
+        return new UserPage(snapshot.version, true, usernames.length,
+                Collections.unmodifiableList(Arrays.asList(usernames).subList(from, to)), nextCursor);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot snapshot = current;
+        if (snapshot.version == version.get()) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = current;
+            long latest = version.get();
+            if (snapshot.version == latest) {
+                return snapshot;
+            }
+            String[] usernames = source.toArray(NO_USERNAMES);
+            Arrays.sort(usernames);
+            snapshot = new Snapshot(latest, usernames);
+            current = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * 某个版本的用户名，按用户名排序，创建后不再修改
+     */
+    private static final class Snapshot {
+        private final long version;
+        private final String[] usernames;
+
+        private Snapshot(long version, String[] usernames) {
+            this.version = version;
+            this.usernames = usernames;
+        }
+    }
+}
@@ -1,5 +1,16 @@
 package com.jobs.websocket;
 
+import com.jobs.cluster.ClusterRouter;
+import com.jobs.config.CompressionConfigurator;
+import com.jobs.config.WebSocketProperties;
+import com.jobs.logging.SampledLogger;
+import com.jobs.metrics.WebSocketMetrics;
+import com.jobs.offline.OfflineStore;
+import com.jobs.offline.StoredMessage;
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.EnvelopeCodec;
+import com.jobs.protocol.MessageType;
+import com.jobs.protocol.WireProtocol;
 import com.jobs.service.ScheduledMessageService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,55 +19,177 @@ import org.springframework.stereotype.Component;
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 配置 WebSocket 服务的连接地址，每次连接都会实例化一个对象
+ * 客户端可以通过子协议选择消息格式：v1.binary 为二进制信封，v1.json 为 JSON 信封，不指定时只收发消息内容文本
+ * 使用信封格式的客户端可以发送 SUBSCRIBE / UNSUBSCRIBE 信封订阅或退订频道，其它消息按原样回显
+ * 发给不在线用户的消息存入离线信箱，用户连接后先补发离线消息
+ * 连接地址带 resume 参数的信封格式会话开启可靠投递：消息带序号发出，客户端以 ACK 信封累计确认，断线重连后从确认处续传
  * @Author: xulai
  * @Date: 2025/1/27
  */
-@ServerEndpoint(value = "/socket/{username}")
+@ServerEndpoint(value = "/socket/{username}", subprotocols = {WireProtocol.BINARY_SUBPROTOCOL, WireProtocol.JSON_SUBPROTOCOL},
+        configurator = CompressionConfigurator.class)
 @Slf4j
 @Component
 public class WebSocketServer {
 
-    //存储 username 与 Session 的对应关系，key 是 username
-    private static Map<String, Session> sessionMap = new HashMap<String, Session>();
+    //定时状态消息的合并键，全局定时推送和用户级定时推送共用，同一用户积压时只保留最新状态
+    private static final String SCHEDULED_STATUS_KEY = "scheduled-status";
 
-    //存储 Session 的 id 和 username 的对应关系
-    private static Map<String, String> idnameMap = new HashMap<String, String>();
+    //启用了定时任务的会话所在的内部频道，定时推送只遍历该频道的订阅者
+    private static final String SCHEDULED_CHANNEL = ChannelRegistry.INTERNAL_PREFIX + "scheduled";
+
+    //会话注册表，存储 username、Session ID 与 Session 的对应关系以及用户的定时任务状态
+    private static SessionRegistry sessionRegistry;
+    
+    //异步广播引擎
+    private static BroadcastEngine broadcastEngine;
+    
+    //WebSocket 推送配置
+    private static WebSocketProperties webSocketProperties;
+    
+    //发送队列监控
+    private static OutboundMonitor outboundMonitor;
     
-    // 存储每个用户的定时任务状态，key 是 username
-    private static Map<String, Boolean> userScheduledTaskStatus = new HashMap<String, Boolean>();
+    //信封级压缩
+    private static FrameCompressor frameCompressor;
+
+    //发送攒批
+    private static OutboundBatcher outboundBatcher;
+
+    //频道订阅索引
+    private static ChannelRegistry channelRegistry;
+    
+    //集群消息路由，负责把消息投递到用户所在的节点
+    private static ClusterRouter clusterRouter;
+
+    //离线消息存储
+    private static OfflineStore offlineStore;
+
+    //可靠投递管理
+    private static DeliveryTracker deliveryTracker;
+
+    //运行指标
+    private static WebSocketMetrics webSocketMetrics;
+
+    //逐条消息路径上的限流日志：收到的消息、连接异常、单个用户的发送失败
+    private static SampledLogger messageLog;
+
+    private static SampledLogger errorLog;
+
+    private static SampledLogger sendFailureLog;
     
     // 注入定时消息服务
     private static ScheduledMessageService scheduledMessageService;
     
+    @Autowired
+    public void setSessionRegistry(SessionRegistry sessionRegistry) {
+        WebSocketServer.sessionRegistry = sessionRegistry;
+    }
+    
+    @Autowired
+    public void setBroadcastEngine(BroadcastEngine broadcastEngine) {
+        WebSocketServer.broadcastEngine = broadcastEngine;
+    }
+    
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.webSocketProperties = webSocketProperties;
+        int maxPerSecond = webSocketProperties.getLogging().getMaxPerSecond();
+        WebSocketServer.messageLog = new SampledLogger(log, "收到消息", maxPerSecond);
+        WebSocketServer.errorLog = new SampledLogger(log, "连接异常", maxPerSecond);
+        WebSocketServer.sendFailureLog = new SampledLogger(log, "发送失败", maxPerSecond);
+    }
+    
+    @Autowired
+    public void setOutboundMonitor(OutboundMonitor outboundMonitor) {
+        WebSocketServer.outboundMonitor = outboundMonitor;
+    }
+    
+    @Autowired
+    public void setFrameCompressor(FrameCompressor frameCompressor) {
+        WebSocketServer.frameCompressor = frameCompressor;
+    }
+    
+    @Autowired
+    public void setOutboundBatcher(OutboundBatcher outboundBatcher) {
+        WebSocketServer.outboundBatcher = outboundBatcher;
+    }
+
+    @Autowired
+    public void setChannelRegistry(ChannelRegistry channelRegistry) {
+        WebSocketServer.channelRegistry = channelRegistry;
+    }
+
+    @Autowired
+    public void setClusterRouter(ClusterRouter clusterRouter) {
+        WebSocketServer.clusterRouter = clusterRouter;
+    }
+    
     @Autowired
     public void setScheduledMessageService(ScheduledMessageService scheduledMessageService) {
         WebSocketServer.scheduledMessageService = scheduledMessageService;
     }
 
+    @Autowired
+    public void setOfflineStore(OfflineStore offlineStore) {
+        WebSocketServer.offlineStore = offlineStore;
+    }
+
+    @Autowired
+    public void setDeliveryTracker(DeliveryTracker deliveryTracker) {
+        WebSocketServer.deliveryTracker = deliveryTracker;
+    }
+
+    @Autowired
+    public void setWebSocketMetrics(WebSocketMetrics webSocketMetrics) {
+        WebSocketServer.webSocketMetrics = webSocketMetrics;
+    }
+
 
     //WebSocket 连接建立后调用该方法
     //注意：当前 Socket Session 属于长连接类型（有状态），因此不能持久化对象到数据库中
     @OnOpen
     public void onOpen(@PathParam("username") String username, Session session) {
-        //根据 username 获取 Socket Session，如果一个用户重复连接，只保留该用户最后连接的 Socket Session
-        Session userSession = sessionMap.get(username);
-        if (userSession != null) {
-            idnameMap.remove(userSession.getId());
-            sessionMap.remove(username);
+        webSocketMetrics.connectionOpened();
+        //存储 username 和 Socket Session 的对应关系，同一用户可以在多个设备上同时连接，连接数达到上限时按设备策略处理
+        ClientSession client = new ClientSession(username, session, webSocketProperties, outboundMonitor, frameCompressor,
+                outboundBatcher, webSocketMetrics);
+        //开启可靠投递的会话在注册前接上投递流，握手消息先于其它消息发出
+        List<String> resume = session.getRequestParameterMap().get("resume");
+        if (resume != null && client.getProtocol() != WireProtocol.LEGACY) {
+            DeliveryStream stream = deliveryTracker.open(username, resume.get(0));
+            client.attach(stream, Envelope.of(MessageType.RESUME, stream.getId() + ":" + stream.getAckedSeq()));
         }
-
-        //存储 username 和 Socket Session 的对应关系
-        sessionMap.put(username, session);
-        //存储 Socket Session 的 ID 和 username 的对应关系
-        idnameMap.put(session.getId(), username);
+        ClientSession displaced = sessionRegistry.register(client);
+        if (displaced != null) {
+            //被挤掉或被拒绝的连接已从注册表中移除，关闭后的 onClose 不会再注销，在这里退订它的频道、保留投递流并关闭
+            channelRegistry.unsubscribeAll(displaced);
+            deliveryTracker.detach(displaced);
+            outboundMonitor.close(displaced, new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "too many devices"));
+            if (displaced == client) {
+                log.warn("用户 {} 的连接数已达上限，拒绝新连接", username);
+                return;
+            }
+            log.info("用户 {} 的连接数已达上限，关闭最早的连接", username);
+        }
+        //用户已在其它设备上启用了定时任务时，新设备同样接收定时推送
+        if (sessionRegistry.getScheduledTaskStatus(username)) {
+            channelRegistry.subscribe(SCHEDULED_CHANNEL, client);
+        }
+        //在集群路由表中记录用户在本节点上有连接，同一用户在其它节点上的记录保持不变
+        clusterRouter.userConnected(username);
+        //补发用户离线期间收到的消息
+        replayOffline(client);
         
-        log.info("用户 {} 已连接，当前在线用户数：{}", username, sessionMap.size());
+        log.info("用户 {} 已连接，当前在线用户数：{}", username, sessionRegistry.size());
         
         // 检查并管理定时任务
         if (scheduledMessageService != null) {
@@ -67,13 +200,13 @@ public class WebSocketServer {
     //关闭链接
     @OnClose
     public void onClose(Session session) {
-        //根据 Scocket Session 的 ID 获取 username
-        String username = idnameMap.get(session.getId());
-        //移除用户信息
-        sessionMap.remove(username);
-        idnameMap.remove(session.getId());
+        webSocketMetrics.connectionClosed();
+        //只移除这一个设备的连接，同一用户的其它设备不受影响
+        ClientSession client = sessionRegistry.unregister(session);
+        release(client);
+        String username = client != null ? client.getUsername() : null;
         
-        log.info("用户 {} 已断开连接，当前在线用户数：{}", username, sessionMap.size());
+        log.info("用户 {} 已断开连接，当前在线用户数：{}", username, sessionRegistry.size());
         
         // 检查并管理定时任务
         if (scheduledMessageService != null) {
@@ -81,59 +214,231 @@ public class WebSocketServer {
         }
     }
 
+    //静态方法，清理心跳超时的连接：与连接关闭一样注销并清理，再异步关闭，关闭后的 onClose 不会重复清理
+    public static void reap(ClientSession client, CloseReason reason) {
+        if (sessionRegistry.unregister(client.getSession()) == client) {
+            release(client);
+            log.info("用户 {} 的连接已清理，当前在线用户数：{}", client.getUsername(), sessionRegistry.size());
+            if (scheduledMessageService != null) {
+                scheduledMessageService.checkAndManageScheduledTask();
+            }
+        }
+        outboundMonitor.close(client, reason);
+    }
+
+    //已注销的会话退订频道、保留投递流，用户最后一个设备断开时从集群路由表中移除
+    private static void release(ClientSession client) {
+        if (client != null) {
+            channelRegistry.unsubscribeAll(client);
+            deliveryTracker.detach(client);
+            userDeviceClosed(client.getUsername());
+        }
+    }
+
+    //用户在本节点的最后一个设备断开后才从集群路由表中移除本节点的记录，用户在其它节点上的记录不受影响，
+    //移除前并发建立的新连接已登记过，移除后重新登记
+    //注销时已停用该用户的定时任务，这里再取消时间轮上的任务
+    private static void userDeviceClosed(String username) {
+        if (sessionRegistry.isOnline(username)) {
+            return;
+        }
+        if (scheduledMessageService != null) {
+            scheduledMessageService.userOffline(username);
+        }
+        clusterRouter.userDisconnected(username);
+        if (sessionRegistry.isOnline(username)) {
+            clusterRouter.userConnected(username);
+        }
+    }
+
     //异常处理
     @OnError
     public void onError(Session session, Throwable throwable) {
-        String username = idnameMap.get(session.getId());
-        log.error("用户 " + username + " 的 WebSocket 通信发生了异常：" + throwable.getMessage());
+        String username = sessionRegistry.getUsername(session);
+        errorLog.error("用户 {} 的 WebSocket 通信发生了异常：{}", username, throwable.getMessage());
     }
 
-    //接收客户端发送过来的消息
+    //接收客户端发送过来的文本消息，JSON 格式下为 JSON 信封
     @OnMessage
-    public void onMessage(Session session, String message) throws IOException {
-        String username = idnameMap.get(session.getId());
-        log.info("用户 " + username + " 接收到客户端发来的消息是：" + message);
-        //同步给客户端发送消息
-        session.getBasicRemote().sendText("服务端收到消息：" + message);
-        //异步给客户端发送消息
-        //session.getAsyncRemote().sendText("收到的消息：" + message);
+    public void onMessage(Session session, String message) {
+        webSocketMetrics.messageReceived(WebSocketMetrics.utf8Length(message));
+        ClientSession client = sessionRegistry.get(session);
+        if (client == null) {
+            return;
+        }
+        client.markActive();
+        if (client.getProtocol() == WireProtocol.JSON) {
+            try {
+                handleEnvelope(client, EnvelopeCodec.decodeJson(message));
+            } catch (IllegalArgumentException e) {
+                log.warn("用户 {} 发来的 JSON 消息无法解析：{}", client.getUsername(), e.getMessage());
+            }
+            return;
+        }
+        echo(client, message);
     }
 
+    //接收客户端发送过来的二进制消息，二进制格式下为二进制信封，否则按 UTF-8 文本处理
+    @OnMessage
+    public void onBinaryMessage(Session session, ByteBuffer message) {
+        webSocketMetrics.messageReceived(message.remaining());
+        ClientSession client = sessionRegistry.get(session);
+        if (client == null) {
+            return;
+        }
+        client.markActive();
+        if (client.getProtocol() == WireProtocol.BINARY) {
+            try {
+                //解压后的内容不超过容器允许的文本消息大小，与直接发送文本消息的限制一致
+                handleEnvelope(client, EnvelopeCodec.decodeBinary(message, session.getMaxTextMessageBufferSize()));
+            } catch (IllegalArgumentException e) {
+                log.warn("用户 {} 发来的二进制消息无法解析：{}", client.getUsername(), e.getMessage());
+            }
+            return;
+        }
+        echo(client, StandardCharsets.UTF_8.decode(message).toString());
+    }
 
-    //封住的消息发送方法，用于其它地方的服务端代码进行调用，给客户端发送消息
-    public void sendMessage(String username, String message) throws IOException {
-        //获取用户的 Socket Session 对象
-        Session session = sessionMap.get(username);
+    //接收客户端对心跳 ping 的回复
+    @OnMessage
+    public void onPong(Session session, PongMessage pong) {
+        ClientSession client = sessionRegistry.get(session);
+        if (client != null) {
+            client.markActive();
+        }
+    }
 
-        if (session != null) {
-            //给指定会话发送消息
-            session.getBasicRemote().sendText(message);
+    //处理客户端发来的信封：确认、订阅、退订频道，其它类型回显内容
+    private void handleEnvelope(ClientSession client, Envelope envelope) {
+        switch (envelope.getType()) {
+            case ACK:
+                client.ack(envelope.getId());
+                break;
+            case SUBSCRIBE:
+                String reason = channelRegistry.validate(client, envelope.getPayload());
+                if (reason != null) {
+                    client.send(Envelope.of(MessageType.NOTICE, "订阅失败：" + reason), null);
+                    return;
+                }
+                channelRegistry.subscribe(envelope.getPayload(), client);
+                client.send(Envelope.of(MessageType.SUBSCRIBE, envelope.getPayload()), null);
+                log.info("用户 {} 订阅了频道 {}", client.getUsername(), envelope.getPayload());
+                break;
+            case UNSUBSCRIBE:
+                channelRegistry.unsubscribe(envelope.getPayload(), client);
+                client.send(Envelope.of(MessageType.UNSUBSCRIBE, envelope.getPayload()), null);
+                log.info("用户 {} 退订了频道 {}", client.getUsername(), envelope.getPayload());
+                break;
+            default:
+                echo(client, envelope.getPayload());
+                break;
         }
     }
 
-    //静态方法，用于定时任务调用，向所有在线用户发送消息
-    public static void sendMessageToAll(String message) {
-        for (Map.Entry<String, Session> entry : sessionMap.entrySet()) {
-            try {
-                Session session = entry.getValue();
-                if (session != null && session.isOpen()) {
-                    session.getBasicRemote().sendText(message);
-                    log.info("定时消息已发送给用户: {}", entry.getKey());
+    private void echo(ClientSession client, String message) {
+        messageLog.info("用户 {} 接收到客户端发来的消息是：{}", client.getUsername(), message);
+        //异步给客户端发送消息，与其它推送共用同一个发送队列
+        client.send(Envelope.of(MessageType.ECHO, "服务端收到消息：" + message), null);
+    }
+
+
+    //封住的消息发送方法，用于其它地方的服务端代码进行调用，给客户端发送消息，用户连接在其它节点时经集群总线转发
+    public void sendMessage(String username, String message) {
+        Envelope envelope = Envelope.of(MessageType.DIRECT, message);
+        if (!clusterRouter.sendToUser(username, envelope)) {
+            storeOffline(username, envelope);
+        }
+    }
+
+    //用户不在线时把消息存入离线信箱，存入期间用户已在本节点重新连接的，立即补发
+    private static void storeOffline(String username, Envelope envelope) {
+        //只保留最新值的状态类消息不需要补发历史值
+        if (envelope.getConflationKey() != null || offlineStore.append(username, envelope) < 0) {
+            return;
+        }
+        ClientSession client = sessionRegistry.getSession(username);
+        if (client != null) {
+            replayOffline(client);
+        }
+    }
+
+    //按顺序补发用户信箱中的离线消息，客户端确认（未开启可靠投递时为写出成功）后从信箱中移除；
+    //某条失败后不再确认后续消息，下次连接时从失败的消息开始补发
+    private static void replayOffline(ClientSession client) {
+        String username = client.getUsername();
+        List<StoredMessage> messages = offlineStore.pending(username);
+        if (messages.isEmpty()) {
+            return;
+        }
+        log.info("用户 {} 上线，补发 {} 条离线消息", username, messages.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        for (StoredMessage message : messages) {
+            client.send(message.getEnvelope(), result -> {
+                if (!result.isOK()) {
+                    failed.set(true);
                 }
-            } catch (IOException e) {
-                log.error("向用户 {} 发送定时消息失败: {}", entry.getKey(), e.getMessage());
-            }
+            }, () -> {
+                if (!failed.get()) {
+                    offlineStore.ack(username, message.getOffset());
+                }
+            });
         }
     }
 
+    //静态方法，给连接在本节点的用户发送消息，用户不在本节点时返回 false
+    public static boolean sendLocalMessage(String username, Envelope envelope) {
+        //获取用户在本节点所有设备上的会话
+        ClientSession[] devices = sessionRegistry.getDevices(username);
+
+        if (devices.length == 0) {
+            return false;
+        }
+        //给每个设备异步发送消息，多个设备共享同一个消息帧，每种格式只编码一次
+        BroadcastFrame frame = BroadcastFrame.of(envelope);
+        for (ClientSession device : devices) {
+            device.send(frame, null);
+        }
+        return true;
+    }
+
+    //静态方法，向集群内所有节点的在线用户发送消息，返回本节点的推送结果
+    public static CompletableFuture<BroadcastResult> sendMessageToCluster(MessageType type, String message) {
+        return clusterRouter.broadcast(Envelope.of(type, message));
+    }
+
+    //静态方法，用于定时任务调用，向所有在线用户发送消息
+    public static CompletableFuture<BroadcastResult> sendMessageToAll(Envelope envelope) {
+        return broadcastEngine.broadcast(envelope);
+    }
+
+    //静态方法，用于定时任务调用，向所有在线用户发送消息，sharded 为 true 时按时间片分批发送
+    public static CompletableFuture<BroadcastResult> sendMessageToAll(Envelope envelope, boolean sharded) {
+        return broadcastEngine.broadcast(envelope, client -> true, sharded);
+    }
+
+    //静态方法，发布消息到频道，集群内所有节点上订阅了该频道的会话都会收到，返回本节点的推送结果
+    public static CompletableFuture<BroadcastResult> publishToChannel(String channel, String message) {
+        return clusterRouter.publish(channel, Envelope.of(MessageType.CHANNEL, message));
+    }
+
+    //静态方法，发布消息给本节点上订阅了频道的会话，只遍历该频道的订阅者
+    public static CompletableFuture<BroadcastResult> publishLocal(String channel, Envelope envelope) {
+        return broadcastEngine.publish(channel, envelope, false);
+    }
+
     //静态方法，获取当前在线用户数量
     public static int getOnlineUserCount() {
-        return sessionMap.size();
+        return sessionRegistry.size();
     }
 
-    //静态方法，获取所有在线用户名列表
-    public static String[] getOnlineUsers() {
-        return sessionMap.keySet().toArray(new String[0]);
+    //静态方法，获取当前在线连接数量，同一用户的多个设备分别计数
+    public static int getOnlineDeviceCount() {
+        return sessionRegistry.deviceCount();
+    }
+
+    //静态方法，按用户名顺序分页获取在线用户名，knownVersion 与当前版本一致时不返回用户名
+    public static UserPage getOnlineUsers(String cursor, int limit, Long knownVersion) {
+        return sessionRegistry.getUsernames(cursor, limit, knownVersion);
     }
     
     // 用户级定时任务管理方法
@@ -142,8 +447,10 @@ public class WebSocketServer {
      * 启动指定用户的定时任务
      */
     public static void startUserScheduledTask(String username) {
-        if (sessionMap.containsKey(username)) {
-            userScheduledTaskStatus.put(username, true);
+        if (sessionRegistry.enableScheduledTask(username)) {
+            for (ClientSession device : sessionRegistry.getDevices(username)) {
+                channelRegistry.subscribe(SCHEDULED_CHANNEL, device);
+            }
             log.info("用户 {} 的定时任务已启动", username);
         } else {
             log.warn("用户 {} 不在线，无法启动定时任务", username);
@@ -154,7 +461,10 @@ public class WebSocketServer {
      * 停止指定用户的定时任务
      */
     public static void stopUserScheduledTask(String username) {
-        userScheduledTaskStatus.put(username, false);
+        sessionRegistry.disableScheduledTask(username);
+        for (ClientSession device : sessionRegistry.getDevices(username)) {
+            channelRegistry.unsubscribe(SCHEDULED_CHANNEL, device);
+        }
         log.info("用户 {} 的定时任务已停止", username);
     }
     
@@ -162,50 +472,65 @@ public class WebSocketServer {
      * 获取指定用户的定时任务状态
      */
     public static boolean getUserScheduledTaskStatus(String username) {
-        return userScheduledTaskStatus.getOrDefault(username, false);
+        return sessionRegistry.getScheduledTaskStatus(username);
     }
     
     /**
      * 向指定用户发送定时消息
      */
     public static void sendScheduledMessageToUser(String username, String message) {
-        Session session = sessionMap.get(username);
-        if (session != null && session.isOpen() && getUserScheduledTaskStatus(username)) {
-            try {
-                session.getBasicRemote().sendText(message);
-                log.info("定时消息已发送给用户: {}", username);
-            } catch (IOException e) {
-                log.error("向用户 {} 发送定时消息失败: {}", username, e.getMessage());
+        sendScheduledEnvelopeToUser(username, Envelope.of(MessageType.SCHEDULED, message));
+    }
+
+    /**
+     * 向指定用户发送定时状态消息，用户积压时只保留最新一条
+     */
+    public static void sendScheduledStatusToUser(String username, String message) {
+        sendScheduledEnvelopeToUser(username, Envelope.conflating(MessageType.SCHEDULED, SCHEDULED_STATUS_KEY, message));
+    }
+
+    private static void sendScheduledEnvelopeToUser(String username, Envelope envelope) {
+        if (!getUserScheduledTaskStatus(username)) {
+            return;
+        }
+        ClientSession[] devices = sessionRegistry.getDevices(username);
+        if (devices.length == 0) {
+            storeOffline(username, envelope);
+            return;
+        }
+        BroadcastFrame frame = BroadcastFrame.of(envelope);
+        for (ClientSession device : devices) {
+            if (device.isOpen()) {
+                device.send(frame, result -> {
+                    if (!result.isOK() && !SupersededException.isSuperseded(result)) {
+                        sendFailureLog.warn("向用户 {} 发送定时消息失败: {}", username, result.getException().getMessage());
+                    }
+                });
             }
         }
     }
     
     /**
-     * 向所有启用了定时任务的用户发送消息
+     * 向所有启用了定时任务的用户发送定时状态消息，开启分片配置时按时间片分批发送，
+     * 用户积压时只保留最新一条
+     * 只遍历内部定时频道的订阅者，再次确认状态是为了排除与停止任务并发时遗留的订阅
      */
-    public static void sendMessageToScheduledUsers(String message) {
-        for (Map.Entry<String, Session> entry : sessionMap.entrySet()) {
-            String username = entry.getKey();
-            if (getUserScheduledTaskStatus(username)) {
-                sendScheduledMessageToUser(username, message);
-            }
-        }
+    public static CompletableFuture<BroadcastResult> sendMessageToScheduledUsers(String message) {
+        return broadcastEngine.publish(SCHEDULED_CHANNEL, Envelope.conflating(MessageType.SCHEDULED, SCHEDULED_STATUS_KEY, message),
+                client -> getUserScheduledTaskStatus(client.getUsername()), true);
     }
     
     /**
      * 获取启用了定时任务的用户数量
      */
     public static int getScheduledUserCount() {
-        return (int) userScheduledTaskStatus.values().stream().filter(status -> status).count();
+        return sessionRegistry.getScheduledUserCount();
     }
     
     /**
-     * 获取启用了定时任务的用户名列表
+     * 按用户名顺序分页获取启用了定时任务的用户名，knownVersion 与当前版本一致时不返回用户名
      */
-    public static String[] getScheduledUsers() {
-        return userScheduledTaskStatus.entrySet().stream()
-                .filter(entry -> entry.getValue() && sessionMap.containsKey(entry.getKey()))
-                .map(Map.Entry::getKey)
-                .toArray(String[]::new);
+    public static UserPage getScheduledUsers(String cursor, int limit, Long knownVersion) {
+        return sessionRegistry.getScheduledUsers(cursor, limit, knownVersion);
     }
 }
@@ -0,0 +1,158 @@
+package com.jobs.websocket;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 可靠投递流：重传窗口的序号分配、回绕、累计确认，以及接续后的重传
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+class DeliveryStreamTest {
+
+    private static final int WINDOW = 4;
+
+    private final ClientSession session = mock(ClientSession.class);
+
+    private final DeliveryStream stream = new DeliveryStream("stream-1", "alice", WINDOW, new DeliveryTracker());
+
+    @Test
+    void stopsAppendingWhenWindowIsFull() {
+        stream.attach(session);
+        for (int i = 1; i <= WINDOW; i++) {
+            assertEquals(i, stream.append(session, frame("m" + i), null).seq);
+        }
+        assertFalse(stream.hasRoom());
+        assertNull(stream.append(session, frame("m5"), null));
+        assertEquals(WINDOW, stream.inFlight());
+    }
+
+    @Test
+    void rejectsAppendFromSessionThatDoesNotOwnStream() {
+        assertNull(stream.append(session, frame("m1"), null));
+        stream.attach(session);
+        assertTrue(stream.detach(session, System.currentTimeMillis()));
+        assertNull(stream.append(session, frame("m1"), null));
+    }
+
+    @Test
+    void ackIsCumulative() {
+        stream.attach(session);
+        AtomicInteger acked = new AtomicInteger();
+        for (int i = 1; i <= WINDOW; i++) {
+            stream.append(session, frame("m" + i), acked::incrementAndGet);
+        }
+
+        assertTrue(stream.ack(2));
+        assertEquals(2, acked.get());
+        assertEquals(2, stream.getAckedSeq());
+        assertTrue(stream.hasRoom());
+
+        //重复或更早的确认不产生变化
+        assertFalse(stream.ack(2));
+        assertFalse(stream.ack(1));
+        assertEquals(2, acked.get());
+
+        //确认超过已写出的序号时只确认到最后一条
+        assertTrue(stream.ack(100));
+        assertEquals(WINDOW, acked.get());
+        assertEquals(WINDOW, stream.getAckedSeq());
+        assertEquals(0, stream.inFlight());
+    }
+
+    @Test
+    void sequencesWrapAroundWindowSlots() {
+        stream.attach(session);
+        List<Long> acked = new ArrayList<>();
+        for (long seq = 1; seq <= WINDOW * 5; seq++) {
+            long expected = seq;
+            DeliveryStream.Entry entry = stream.append(session, frame("m" + seq), () -> acked.add(expected));
+            assertEquals(seq, entry.seq);
+            //窗口写满后确认最早的一条，每个槽位都被反复复用
+            if (seq >= WINDOW) {
+                assertFalse(stream.hasRoom());
+                assertTrue(stream.ack(seq - WINDOW + 1));
+            }
+        }
+        assertTrue(stream.ack(WINDOW * 5));
+        assertEquals(WINDOW * 5, acked.size());
+        for (int i = 0; i < acked.size(); i++) {
+            assertEquals(i + 1, acked.get(i).longValue());
+        }
+    }
+
+    @Test
+    void resendsUnackedMessagesAfterAttach() {
+        ClientSession resumed = mock(ClientSession.class);
+        stream.attach(session);
+        for (int i = 1; i <= WINDOW; i++) {
+            stream.append(session, frame("m" + i), null);
+        }
+        stream.ack(1);
+        assertTrue(stream.detach(session, System.currentTimeMillis() + 60_000));
+        assertFalse(stream.isExpired(System.currentTimeMillis()));
+
+        stream.attach(resumed);
+        assertTrue(stream.hasResend());
+        assertNull(stream.append(session, frame("stale"), null));
+
+        List<DeliveryStream.Entry> first = stream.pollResend(2);
+        assertEquals(2, first.size());
+        assertEquals(2, first.get(0).seq);
+        assertEquals(3, first.get(1).seq);
+        assertEquals("m2", first.get(0).frame.getEnvelope().getPayload());
+
+        List<DeliveryStream.Entry> rest = stream.pollResend(10);
+        assertEquals(1, rest.size());
+        assertEquals(4, rest.get(0).seq);
+        assertFalse(stream.hasResend());
+
+        //重传完成后新消息接着原来的序号
+        stream.ack(4);
+        assertEquals(5, stream.append(resumed, frame("m5"), null).seq);
+    }
+
+    @Test
+    void skipsResendOfMessagesAckedAfterAttach() {
+        ClientSession resumed = mock(ClientSession.class);
+        stream.attach(session);
+        for (int i = 1; i <= WINDOW; i++) {
+            stream.append(session, frame("m" + i), null);
+        }
+        stream.detach(session, System.currentTimeMillis());
+        stream.attach(resumed);
+
+        //客户端重连后先确认了前 3 条，只需重传第 4 条
+        stream.ack(3);
+        List<DeliveryStream.Entry> entries = stream.pollResend(10);
+        assertEquals(1, entries.size());
+        assertEquals(4, entries.get(0).seq);
+    }
+
+    @Test
+    void discardReportsUnackedMessages() {
+        stream.attach(session);
+        for (int i = 1; i <= 3; i++) {
+            stream.append(session, frame("m" + i), null);
+        }
+        stream.ack(1);
+        stream.detach(session, 0);
+        assertTrue(stream.isExpired(System.currentTimeMillis()));
+        assertEquals(2, stream.discard());
+    }
+
+    private static BroadcastFrame frame(String payload) {
+        return BroadcastFrame.of(Envelope.of(MessageType.DIRECT, payload));
+    }
+}
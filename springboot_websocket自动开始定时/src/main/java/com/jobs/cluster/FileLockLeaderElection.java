@@ -0,0 +1,142 @@
+package com.jobs.cluster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于文件锁的定时任务选主，同一台机器（或共享目录）上的多个进程可以互相选主
+ * 每个任务一个租约文件，内容为 “持有者 token 到期时间”，在该任务锁文件的排它锁内读取、判断并写回；
+ * 租约先写入临时文件再原子替换，读到的总是某一次完整的写入，不会读到写了一半的记录
+ * 租约内容无法解析时视为已过期，token 不归零：本进程记录每个任务见过的最大 token，接管时在两者中的较大值上递增，
+ * 避免重新发出已经发过的 token，让已被取代的旧 leader 通过 fencing 校验
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class FileLockLeaderElection implements LeaderElection {
+
+    private final Path directory;
+
+    //每个任务在本进程见过的最大 fencingToken，租约文件损坏时 token 不会倒退
+    private final ConcurrentHashMap<String, Long> tokenFloors = new ConcurrentHashMap<>();
+
+    public FileLockLeaderElection(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建租约目录 " + directory, e);
+        }
+    }
+
+    //同一个 JVM 内对同一文件重复加锁会抛出 OverlappingFileLockException，进程内先串行化
+    @Override
+    public synchronized Lease acquire(String job, String nodeId, long ttlMillis) {
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = openLock(job)) {
+            FileLock lock = channel.lock();
+            try {
+                long now = System.currentTimeMillis();
+                Record record = read(job);
+                String holder = record != null ? record.holder : null;
+                long expiresAt = record != null ? record.expiresAt : 0;
+                long token = Math.max(record != null ? record.token : 0, tokenFloors.getOrDefault(job, 0L));
+                if (!nodeId.equals(holder) && expiresAt > now) {
+                    observe(job, token);
+                    return null;
+                }
+                if (!nodeId.equals(holder) || expiresAt <= now) {
+                    token++;
+                }
+                write(job, nodeId, token, now + ttlMillis);
+                observe(job, token);
+                return new Lease(job, nodeId, token, startNanos, ttlMillis);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读写任务 " + job + " 的租约文件失败", e);
+        }
+    }
+
+    @Override
+    public synchronized void release(Lease lease) {
+        try (FileChannel channel = openLock(lease.getJob())) {
+            FileLock lock = channel.lock();
+            try {
+                Record record = read(lease.getJob());
+                if (record != null && lease.getHolder().equals(record.holder)
+                        && record.token == lease.getFencingToken()) {
+                    //保留 token，下一任 leader 在此基础上递增
+                    write(lease.getJob(), record.holder, lease.getFencingToken(), 0);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读写任务 " + lease.getJob() + " 的租约文件失败", e);
+        }
+    }
+
+    private void observe(String job, long token) {
+        tokenFloors.merge(job, token, Math::max);
+    }
+
+    //加锁用的文件与租约文件分开，租约文件被原子替换后锁仍然加在同一个文件上
+    private FileChannel openLock(String job) throws IOException {
+        return FileChannel.open(directory.resolve(job + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 读取租约，文件不存在或内容无法解析时返回 null
+     */
+    private Record read(String job) throws IOException {
+        Path file = directory.resolve(job + ".lease");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String[] fields = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            return new Record(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void write(String job, String holder, long token, long expiresAt) throws IOException {
+        byte[] content = (holder + " " + token + " " + expiresAt).getBytes(StandardCharsets.UTF_8);
+        Path temp = directory.resolve(job + ".lease.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(content));
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(job + ".lease"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 租约文件中的一条记录
+     */
+    private static final class Record {
+        private final String holder;
+        private final long token;
+        private final long expiresAt;
+
+        private Record(String holder, long token, long expiresAt) {
+            this.holder = holder;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.jobs.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的集群消息总线
+ * 同一个实例上订阅的多个节点之间可以互相投递消息，投递在独立线程上异步进行，模拟网络传输，
+ * 用于单机部署以及在一个进程里验证多节点路由，不依赖任何外部中间件
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class InMemoryClusterBus implements ClusterBus {
+
+    //节点 ID 与消息监听器的对应关系
+    private final ConcurrentHashMap<String, Consumer<ClusterMessage>> listeners = new ConcurrentHashMap<>();
+
+    private final ExecutorService deliveryExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-bus-loopback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void subscribe(String nodeId, Consumer<ClusterMessage> listener) {
+        listeners.put(nodeId, listener);
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        listeners.remove(nodeId);
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        Consumer<ClusterMessage> listener = listeners.get(nodeId);
+        if (listener == null) {
+            return false;
+        }
+        deliver(listener, message);
+        return true;
+    }
+
+    @Override
+    public void publish(ClusterMessage message) {
+        listeners.forEach((nodeId, listener) -> {
+            if (!nodeId.equals(message.getSourceNode())) {
+                deliver(listener, message);
+            }
+        });
+    }
+
+    private void deliver(Consumer<ClusterMessage> listener, ClusterMessage message) {
+        deliveryExecutor.execute(() -> {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                log.error("集群消息投递失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 关闭投递线程
+     */
+    public void shutdown() {
+        deliveryExecutor.shutdown();
+    }
+}
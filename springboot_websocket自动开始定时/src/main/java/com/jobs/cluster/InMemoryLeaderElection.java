@@ -0,0 +1,48 @@
+package com.jobs.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 进程内的定时任务选主，与 {@link InMemoryClusterBus} 配合使用
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class InMemoryLeaderElection implements LeaderElection {
+
+    //存储任务名与当前租约记录的对应关系
+    private final Map<String, LeaseRecord> leases = new HashMap<>();
+
+    @Override
+    public synchronized Lease acquire(String job, String nodeId, long ttlMillis) {
+        long startNanos = System.nanoTime();
+        long now = System.currentTimeMillis();
+        LeaseRecord record = leases.get(job);
+        if (record == null) {
+            record = new LeaseRecord();
+            leases.put(job, record);
+        } else if (!nodeId.equals(record.holder) && record.expiresAt > now) {
+            return null;
+        }
+        if (!nodeId.equals(record.holder) || record.expiresAt <= now) {
+            record.holder = nodeId;
+            record.token++;
+        }
+        record.expiresAt = now + ttlMillis;
+        return new Lease(job, nodeId, record.token, startNanos, ttlMillis);
+    }
+
+    @Override
+    public synchronized void release(Lease lease) {
+        LeaseRecord record = leases.get(lease.getJob());
+        if (record != null && lease.getHolder().equals(record.holder) && record.token == lease.getFencingToken()) {
+            record.expiresAt = 0;
+        }
+    }
+
+    private static final class LeaseRecord {
+        private String holder;
+        private long token;
+        private long expiresAt;
+    }
+}
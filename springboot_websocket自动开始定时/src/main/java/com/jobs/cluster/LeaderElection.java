@@ -0,0 +1,23 @@
+package com.jobs.cluster;
+
+/**
+ * 定时任务选主 SPI
+ * 每个任务一份租约，同一时刻只有一个节点持有，默认提供进程内实现 {@link InMemoryLeaderElection}
+ * 和同一台机器上多进程可用的文件锁实现 {@link FileLockLeaderElection}
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public interface LeaderElection {
+
+    /**
+     * 获取或续期任务的租约
+     * 本节点已持有时续期，fencingToken 不变；租约空闲或已过期时由本节点接管，fencingToken 加一
+     * @return 本节点持有的租约，被其它节点持有且未过期时返回 null
+     */
+    Lease acquire(String job, String nodeId, long ttlMillis);
+
+    /**
+     * 主动释放租约，其它节点可以立即接管
+     */
+    void release(Lease lease);
+}
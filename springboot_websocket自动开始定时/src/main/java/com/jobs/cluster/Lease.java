@@ -0,0 +1,48 @@
+package com.jobs.cluster;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时任务的租约
+ * 持有租约的节点是该任务的 leader，fencingToken 在每次换主时递增，
+ * 各节点只接受不小于已见过最大 token 的推送，暂停后恢复的旧 leader 无法重复推送
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class Lease {
+
+    private final String job;
+
+    private final String holder;
+
+    private final long fencingToken;
+
+    //按本机单调时钟计算的租约截止时间，从发起获取请求前开始计时，只会比实际到期更早
+    private final long deadlineNanos;
+
+    public Lease(String job, String holder, long fencingToken, long startNanos, long ttlMillis) {
+        this.job = job;
+        this.holder = holder;
+        this.fencingToken = fencingToken;
+        this.deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    public String getHolder() {
+        return holder;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * 租约是否仍然有效
+     */
+    public boolean isValid() {
+        return System.nanoTime() - deadlineNanos < 0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.jobs.cluster;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.MessageType;
+import com.jobs.websocket.BroadcastResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 集群定时任务执行器
+ * 每个节点的 @Scheduled 都会触发，但只有持有该任务租约的节点生成推送内容，
+ * 内容只计算一次，带着 fencingToken 经集群总线发给所有节点，由各节点推送给各自的在线用户
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+public class ScheduledJobRunner {
+
+    private final String nodeId;
+
+    private final LeaderElection leaderElection;
+
+    private final ClusterRouter clusterRouter;
+
+    private final long leaseTtl;
+
+    public ScheduledJobRunner(String nodeId, LeaderElection leaderElection, ClusterRouter clusterRouter, long leaseTtl) {
+        this.nodeId = nodeId;
+        this.leaderElection = leaderElection;
+        this.clusterRouter = clusterRouter;
+        this.leaseTtl = leaseTtl;
+    }
+
+    /**
+     * 本节点是 leader 时生成推送内容并分发到集群
+     * @param job  任务名，同一任务在所有节点上必须一致
+     * @param type 推送的消息类型
+     * @param tick 生成推送内容，返回 null 表示本次无需推送
+     * @return 本节点的推送结果，本节点不是 leader 或无需推送时返回 null
+     */
+    public CompletableFuture<BroadcastResult> runIfLeader(String job, MessageType type, Supplier<String> tick) {
+        return runIfLeader(job, type, false, tick);
+    }
+
+    /**
+     * 本节点是 leader 时生成推送内容并分发到集群
+     * @param latestOnly 是否只投递最新值，为 true 时以任务名作为合并键，客户端积压的旧推送会被新推送替换
+     * @return 本节点的推送结果，本节点不是 leader 或无需推送时返回 null
+     */
+    public CompletableFuture<BroadcastResult> runIfLeader(String job, MessageType type, boolean latestOnly, Supplier<String> tick) {
+        Lease lease = leaderElection.acquire(job, nodeId, leaseTtl);
+        if (lease == null) {
+            log.debug("节点 {} 不是任务 {} 的 leader，跳过本次触发", nodeId, job);
+            return null;
+        }
+        String message = tick.get();
+        if (message == null) {
+            return null;
+        }
+        //生成内容期间可能发生长时间停顿，租约已过期则放弃，由新的 leader 负责
+        if (!lease.isValid()) {
+            log.warn("节点 {} 持有的任务 {} 租约已过期，放弃本次推送", nodeId, job);
+            return null;
+        }
+        Envelope envelope = latestOnly ? Envelope.conflating(type, job, message) : Envelope.of(type, message);
+        return clusterRouter.broadcastTick(job, lease.getFencingToken(), envelope);
+    }
+}
@@ -0,0 +1,108 @@
+package com.jobs.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.Extension;
+import javax.websocket.server.ServerEndpointConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: WebSocket 握手配置，控制 permessage-deflate 压缩扩展的协商
+ * 端点实例由容器创建，与 WebSocketServer 一样通过静态字段获取 Spring 管理的配置
+ */
+@Component
+public class CompressionConfigurator extends ServerEndpointConfig.Configurator {
+
+    public static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private static WebSocketProperties webSocketProperties;
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        CompressionConfigurator.webSocketProperties = webSocketProperties;
+    }
+
+    /**
+     * 关闭 permessage-deflate 时不协商任何扩展；开启时按配置在客户端的每个压缩提议上追加 no_context_takeover 参数
+     */
+    @Override
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+        WebSocketProperties.Compression compression = webSocketProperties.getCompression();
+        if (!compression.isPerMessageDeflate()) {
+            return Collections.emptyList();
+        }
+        List<Extension> negotiated = super.getNegotiatedExtensions(installed, requested);
+        List<Extension> result = new ArrayList<>(negotiated.size());
+        for (Extension extension : negotiated) {
+            if (!PER_MESSAGE_DEFLATE.equals(extension.getName())) {
+                result.add(extension);
+                continue;
+            }
+            List<Extension.Parameter> parameters = new ArrayList<>(extension.getParameters());
+            if (compression.isServerNoContextTakeover()) {
+                addParameter(parameters, SERVER_NO_CONTEXT_TAKEOVER);
+            }
+            if (compression.isClientNoContextTakeover()) {
+                addParameter(parameters, CLIENT_NO_CONTEXT_TAKEOVER);
+            }
+            result.add(new NegotiatedExtension(extension.getName(), parameters));
+        }
+        return result;
+    }
+
+    private static void addParameter(List<Extension.Parameter> parameters, String name) {
+        for (Extension.Parameter parameter : parameters) {
+            if (name.equals(parameter.getName())) {
+                return;
+            }
+        }
+        parameters.add(new NegotiatedParameter(name));
+    }
+
+    private static final class NegotiatedExtension implements Extension {
+        private final String name;
+        private final List<Parameter> parameters;
+
+        private NegotiatedExtension(String name, List<Parameter> parameters) {
+            this.name = name;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+    }
+
+    private static final class NegotiatedParameter implements Extension.Parameter {
+        private final String name;
+
+        private NegotiatedParameter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return null;
+        }
+    }
+}
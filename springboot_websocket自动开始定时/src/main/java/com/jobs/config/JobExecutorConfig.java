@@ -0,0 +1,33 @@
+package com.jobs.config;
+
+import com.jobs.concurrent.PartitionedExecutor;
+import com.jobs.concurrent.VirtualThreads;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: 定时任务执行器配置，定时器线程只负责按时触发，生成和推送消息在分区执行器中进行，
+ * 默认每个 CPU 核心一个分区，开启虚拟线程模式且 JDK 支持时分区线程改为虚拟线程、分区数相应放大，同一 key 的任务仍依次执行；
+ * 各任务的调度延迟和执行耗时记录到 Micrometer
+ */
+@Slf4j
+@Configuration
+public class JobExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public PartitionedExecutor jobExecutor(WebSocketProperties webSocketProperties, MeterRegistry meterRegistry) {
+        int partitions = webSocketProperties.getJobs().getPartitions();
+        if (partitions <= 0) {
+            partitions = Runtime.getRuntime().availableProcessors();
+        }
+        boolean virtualThreads = webSocketProperties.isVirtualThreads() && VirtualThreads.isAvailable();
+        if (webSocketProperties.isVirtualThreads() && !virtualThreads) {
+            log.warn("当前 JDK 不支持虚拟线程，定时任务继续在 {} 个分区线程中执行", partitions);
+        }
+        return new PartitionedExecutor("job-partition", partitions, virtualThreads, meterRegistry);
+    }
+}
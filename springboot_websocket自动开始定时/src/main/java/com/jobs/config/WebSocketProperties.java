@@ -0,0 +1,326 @@
+package com.jobs.config;
+
+import com.jobs.websocket.DevicePolicy;
+import com.jobs.websocket.OverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * @Author: xulai
+ * @Date: 2025/1/27
+ * @Describe: WebSocket 推送相关配置，对应 application.yml 中的 websocket 前缀
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "websocket")
+public class WebSocketProperties {
+
+    /**
+     * 异步发送超时时间（毫秒），超过该时间仍未写出的消息按发送失败处理
+     */
+    private long sendTimeout = 5000;
+
+    /**
+     * 广播消息是否每种格式只编码一次并共享给所有接收者，关闭后逐个接收者编码；不指定子协议的旧客户端始终收到文本帧
+     */
+    private boolean encodeOnce = true;
+
+    /**
+     * 是否使用虚拟线程执行容器回调、会话关闭等阻塞操作，需要 JDK 21 及以上，低版本 JDK 上忽略并继续使用平台线程
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * 定时任务执行配置
+     */
+    private Jobs jobs = new Jobs();
+
+    /**
+     * 定时推送分片配置
+     */
+    private Sharding sharding = new Sharding();
+
+    /**
+     * 会话发送队列配置
+     */
+    private Outbound outbound = new Outbound();
+
+    /**
+     * 多设备连接配置
+     */
+    private Devices devices = new Devices();
+
+    /**
+     * 发送攒批配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 压缩配置
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 频道订阅配置
+     */
+    private Channel channel = new Channel();
+
+    /**
+     * 心跳配置
+     */
+    private Heartbeat heartbeat = new Heartbeat();
+
+    /**
+     * 可靠投递配置
+     */
+    private Delivery delivery = new Delivery();
+
+    /**
+     * 离线消息配置
+     */
+    private Offline offline = new Offline();
+
+    /**
+     * 集群配置
+     */
+    private Cluster cluster = new Cluster();
+
+    /**
+     * 消息路径日志配置
+     */
+    private Logging logging = new Logging();
+
+    @Data
+    public static class Jobs {
+
+        /**
+         * 执行定时任务的分区数，每个分区一个线程，为 0 时取 CPU 核心数
+         */
+        private int partitions = 0;
+    }
+
+    @Data
+    public static class Sharding {
+
+        /**
+         * 是否开启分片推送，开启后定时推送按用户名哈希分到多个时间片依次发出
+         */
+        private boolean enabled = false;
+
+        /**
+         * 时间片数量
+         */
+        private int slots = 10;
+
+        /**
+         * 所有时间片在多长的时间窗口内发完（毫秒），应小于推送周期
+         */
+        private long window = 2000;
+
+        /**
+         * 每个时间片额外叠加的最大随机抖动（毫秒）
+         */
+        private long jitter = 100;
+    }
+
+    @Data
+    public static class Outbound {
+
+        /**
+         * 每个会话最多积压的待发送消息数
+         */
+        private int capacity = 1000;
+
+        /**
+         * 队列写满后的处理策略
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    }
+
+    @Data
+    public static class Devices {
+
+        /**
+         * 同一用户最多同时连接的设备数，为 1 时只保留一个连接
+         */
+        private int maxDevices = 5;
+
+        /**
+         * 连接数达到上限后新连接到来时的处理策略
+         */
+        private DevicePolicy policy = DevicePolicy.EVICT_OLDEST;
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * 是否开启攒批，开启后 v1.binary、v1.json 会话在攒批窗口内收到的消息合并为一个批量消息发送
+         */
+        private boolean enabled = false;
+
+        /**
+         * 攒批窗口（毫秒），会话空闲时第一条消息最多等待这么久再发送
+         */
+        private long window = 5;
+
+        /**
+         * 每个批量消息最多合并的消息数，待发送消息达到该数量时不再等待窗口到期
+         */
+        private int maxMessages = 32;
+
+        /**
+         * 每个批量消息最多合并的编码后字节数，超过后剩余消息留到下一批
+         */
+        private int maxBytes = 16384;
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * 是否协商 permessage-deflate，开启后容器对该会话的每条消息单独压缩，无法按大小跳过；
+         * 关闭后 v1.binary 会话使用信封级压缩，广播时只压缩一次
+         */
+        private boolean perMessageDeflate = true;
+
+        /**
+         * permessage-deflate 服务端不保留压缩上下文，压缩率降低，但每个会话不再常驻压缩窗口内存
+         */
+        private boolean serverNoContextTakeover = false;
+
+        /**
+         * permessage-deflate 要求客户端不保留压缩上下文
+         */
+        private boolean clientNoContextTakeover = false;
+
+        /**
+         * 信封级压缩的最小内容字节数，小于该值的消息不压缩；
+         * 只作用于未协商 permessage-deflate 的 v1.binary 会话，协商了该扩展的会话由容器压缩每条消息
+         */
+        private int threshold = 256;
+
+        /**
+         * 信封级压缩级别，1-9，越大压缩率越高、CPU 消耗越大
+         */
+        private int level = 6;
+    }
+
+    @Data
+    public static class Channel {
+
+        /**
+         * 每个会话最多订阅的频道数
+         */
+        private int maxPerSession = 64;
+
+        /**
+         * 频道名最大长度
+         */
+        private int maxNameLength = 64;
+    }
+
+    @Data
+    public static class Heartbeat {
+
+        /**
+         * 是否开启心跳检测
+         */
+        private boolean enabled = true;
+
+        /**
+         * 心跳间隔（毫秒），每隔该时间扫描一次所有会话，上一轮之后没有收到数据的会话发送 ping
+         */
+        private long interval = 30000;
+
+        /**
+         * 心跳超时时间（毫秒），超过该时间没有收到任何数据的会话被清理，应大于心跳间隔的两倍
+         */
+        private long timeout = 90000;
+    }
+
+    @Data
+    public static class Delivery {
+
+        /**
+         * 重传窗口大小，已写出未确认的消息达到该数量后暂停写出
+         */
+        private int window = 256;
+
+        /**
+         * 会话断开后投递流的保留时间（毫秒），期间重连可以从确认处续传
+         */
+        private long resumeTimeout = 60000;
+    }
+
+    @Data
+    public static class Offline {
+
+        /**
+         * 是否保存离线消息，用户上线后补发
+         */
+        private boolean enabled = true;
+
+        /**
+         * 离线消息日志目录，同一目录只能由一个进程使用；
+         * 未配置时使用 java.io.tmpdir 下按服务端口区分的 websocket-offline-端口 目录，同一台机器上的多个实例互不冲突
+         */
+        private String directory;
+
+        /**
+         * 段文件大小（字节），每个段整体映射到内存
+         */
+        private int segmentSize = 16 * 1024 * 1024;
+
+        /**
+         * 消息保留时间（毫秒），超过后不再补发
+         */
+        private long retention = 7 * 24 * 3600 * 1000L;
+
+        /**
+         * 日志总大小上限（字节），超过后从最早的段开始删除，即使其中还有未补发的消息
+         */
+        private long maxBytes = 256 * 1024 * 1024L;
+
+        /**
+         * 清理过期消息和无用段的间隔（毫秒）
+         */
+        private long compactInterval = 60000;
+    }
+
+    @Data
+    public static class Cluster {
+
+        /**
+         * 当前节点 ID，集群内唯一，未配置时随机生成
+         */
+        private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+        /**
+         * 定时任务选主方式：memory-进程内，file-基于文件锁，同一台机器上的多个进程可以互相选主
+         */
+        private String leaderElection = "memory";
+
+        /**
+         * 文件锁选主的租约文件目录
+         */
+        private String leaseDirectory = System.getProperty("java.io.tmpdir") + "/websocket-leases";
+
+        /**
+         * 定时任务租约有效期（毫秒），应大于最短的推送周期，leader 在每次触发时续期
+         */
+        private long leaseTtl = 60000;
+    }
+
+    @Data
+    public static class Logging {
+
+        /**
+         * 逐条消息的日志（收到的消息、单个接收者的发送失败、连接异常）每类每秒最多输出的行数，超出的丢弃并在下一秒汇报省略数，为 0 时不输出
+         */
+        private int maxPerSecond = 10;
+    }
+}
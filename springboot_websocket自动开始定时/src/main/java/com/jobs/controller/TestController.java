@@ -1,8 +1,17 @@
 package com.jobs.controller;
 
+import com.jobs.concurrent.PartitionedExecutor;
 import com.jobs.dto.SendMsgDTO;
 import com.jobs.dto.ScheduledMessageDTO;
+import com.jobs.offline.OfflineStore;
 import com.jobs.service.ScheduledMessageService;
+import com.jobs.websocket.ChannelRegistry;
+import com.jobs.websocket.DeliveryTracker;
+import com.jobs.websocket.FrameCompressor;
+import com.jobs.websocket.HeartbeatMonitor;
+import com.jobs.websocket.OutboundBatcher;
+import com.jobs.websocket.OutboundMonitor;
+import com.jobs.websocket.UserPage;
 import com.jobs.websocket.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -10,6 +19,7 @@ import org.springframework.web.bind.annotation.*;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @RestController
 @RequestMapping("/test")
@@ -21,6 +31,30 @@ public class TestController {
     @Autowired
     private ScheduledMessageService scheduledMessageService;
 
+    @Autowired
+    private OutboundMonitor outboundMonitor;
+
+    @Autowired
+    private FrameCompressor frameCompressor;
+
+    @Autowired
+    private OutboundBatcher outboundBatcher;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private OfflineStore offlineStore;
+
+    @Autowired
+    private DeliveryTracker deliveryTracker;
+
+    @Autowired
+    private HeartbeatMonitor heartbeatMonitor;
+
+    @Autowired
+    private PartitionedExecutor jobExecutor;
+
     //通过后端代码，向指定用户发送信息，测试指定用户的前端页面是否可以收到信息
     @PostMapping("/sendmsg")
     public String send(@RequestBody SendMsgDTO sendMsgDTO) throws IOException {
@@ -42,20 +76,102 @@ public class TestController {
     }
 
     /**
-     * 获取当前在线用户信息
+     * 分页获取当前在线用户信息，cursor 为上一页返回的 nextCursor；
+     * 带上上次返回的 version 且在线用户没有变化时 changed 为 false，不返回用户名
      */
     @GetMapping("/onlineUsers")
-    public Object getOnlineUsers() {
+    public Object getOnlineUsers(@RequestParam(required = false) String cursor,
+                                 @RequestParam(defaultValue = "100") int limit,
+                                 @RequestParam(value = "version", required = false) Long knownVersion) {
         int onlineCount = WebSocketServer.getOnlineUserCount();
-        String[] onlineUsers = WebSocketServer.getOnlineUsers();
+        int onlineDevices = WebSocketServer.getOnlineDeviceCount();
+        UserPage page = WebSocketServer.getOnlineUsers(cursor, limit, knownVersion);
         
         return new Object() {
             public final int count = onlineCount;
-            public final String[] users = onlineUsers;
+            public final int devices = onlineDevices;
+            public final List<String> users = page.getUsers();
+            public final String nextCursor = page.getNextCursor();
+            public final long version = page.getVersion();
+            public final boolean changed = page.isChanged();
             public final String currentTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         };
     }
 
+    /**
+     * 获取发送队列统计信息（队列深度、丢弃/合并消息数、断开的慢客户端数）
+     */
+    @GetMapping("/outboundStats")
+    public Object getOutboundStats() {
+        return outboundMonitor.getStats();
+    }
+
+    /**
+     * 获取压缩统计信息（压缩率、CPU 消耗、协商了 permessage-deflate 的会话数）
+     */
+    @GetMapping("/compressionStats")
+    public Object getCompressionStats() {
+        return frameCompressor.getStats();
+    }
+
+    /**
+     * 获取攒批统计信息（批量消息数、平均每批消息数）
+     */
+    @GetMapping("/batchStats")
+    public Object getBatchStats() {
+        return outboundBatcher.getStats();
+    }
+
+    /**
+     * 发布消息到频道，集群内订阅了该频道的会话都会收到
+     */
+    @PostMapping("/publish")
+    public String publish(@RequestParam String channel, @RequestParam String message) {
+        int subscribers = channelRegistry.subscriberCount(channel);
+        WebSocketServer.publishToChannel(channel, message);
+        return "频道消息已发布，本节点订阅者数：" + subscribers;
+    }
+
+    /**
+     * 获取本节点各频道的订阅者数量
+     */
+    @GetMapping("/channels")
+    public Object getChannels() {
+        return channelRegistry.getStats();
+    }
+
+    /**
+     * 获取离线消息存储统计信息（段数、待补发用户数和消息数）
+     */
+    @GetMapping("/offlineStats")
+    public Object getOfflineStats() {
+        return offlineStore.getStats();
+    }
+
+    /**
+     * 获取可靠投递统计信息（确认数、重传数、投递延迟）
+     */
+    @GetMapping("/deliveryStats")
+    public Object getDeliveryStats() {
+        return deliveryTracker.getStats();
+    }
+
+    /**
+     * 获取心跳统计信息（发出的 ping 数、清理的连接数）
+     */
+    @GetMapping("/heartbeatStats")
+    public Object getHeartbeatStats() {
+        return heartbeatMonitor.getStats();
+    }
+
+    /**
+     * 获取定时任务执行统计信息（各分区排队数、各任务的排队和执行耗时）
+     */
+    @GetMapping("/jobStats")
+    public Object getJobStats() {
+        return jobExecutor.getStats();
+    }
+
     /**
      * 立即触发定时推送（测试用）
      */
@@ -0,0 +1,86 @@
+package com.jobs.logging;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限流日志
+ * 用于逐条消息都会经过的路径（收到的消息、单个接收者的发送失败等），每秒最多输出 maxPerSecond 行，超出的直接丢弃，
+ * 丢弃时不格式化参数；进入下一秒后第一次输出前先汇报上一段时间省略的行数
+ * maxPerSecond 为 0 时完全不输出
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class SampledLogger {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger;
+
+    //日志类别，汇报省略行数时用于区分
+    private final String category;
+
+    private final int maxPerSecond;
+
+    //当前时间窗口的开始时间（纳秒）
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    //当前时间窗口内已输出的行数
+    private final AtomicInteger used = new AtomicInteger();
+
+    //上次汇报之后省略的行数
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public SampledLogger(Logger logger, String category, int maxPerSecond) {
+        this.logger = logger;
+        this.category = category;
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+    }
+
+    public void info(String format, Object arg) {
+        if (logger.isInfoEnabled() && acquire()) {
+            logger.info(format, arg);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (logger.isInfoEnabled() && acquire()) {
+            logger.info(format, arg1, arg2);
+        }
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        if (logger.isWarnEnabled() && acquire()) {
+            logger.warn(format, arg1, arg2);
+        }
+    }
+
+    public void error(String format, Object arg1, Object arg2) {
+        if (logger.isErrorEnabled() && acquire()) {
+            logger.error(format, arg1, arg2);
+        }
+    }
+
+    private boolean acquire() {
+        if (maxPerSecond == 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            used.set(0);
+            long dropped = suppressed.getAndSet(0);
+            if (dropped > 0) {
+                logger.info("{}日志过去 {} 毫秒内省略了 {} 行", category, TimeUnit.NANOSECONDS.toMillis(now - start), dropped);
+            }
+        }
+        if (used.incrementAndGet() <= maxPerSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+}
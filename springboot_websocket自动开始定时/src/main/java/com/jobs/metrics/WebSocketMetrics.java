@@ -0,0 +1,134 @@
+package com.jobs.metrics;
+
+import com.jobs.websocket.SessionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * WebSocket 运行指标，通过 Micrometer 注册，由 Actuator 的 /actuator/metrics、/actuator/prometheus 暴露
+ * 所有指标在启动时注册一次并保存引用，记录时只做计数器累加和 LatencyHistogram 记录，不查找指标、不创建标签，发送路径上不分配对象
+ * 发送延迟为消息进入会话发送队列到写出完成（成功才记录），包含排队时间；字节数为写出的帧大小，文本帧按 UTF-8 编码计算
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class WebSocketMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    private Counter connectionsOpened;
+
+    private Counter connectionsClosed;
+
+    private Counter messagesReceived;
+
+    private Counter bytesReceived;
+
+    private Counter messagesSent;
+
+    private Counter framesSent;
+
+    private Counter bytesSent;
+
+    private Counter sendFailures;
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    private final LatencyHistogram broadcastDuration = new LatencyHistogram();
+
+    private Counter broadcastRecipients;
+
+    @PostConstruct
+    public void init() {
+        connectionsOpened = Counter.builder("websocket.connections.opened").description("建立的连接数").register(meterRegistry);
+        connectionsClosed = Counter.builder("websocket.connections.closed").description("关闭的连接数").register(meterRegistry);
+        Gauge.builder("websocket.connections.active", sessionRegistry, SessionRegistry::deviceCount)
+                .description("当前在线连接数").register(meterRegistry);
+        Gauge.builder("websocket.users.online", sessionRegistry, SessionRegistry::size)
+                .description("当前在线用户数").register(meterRegistry);
+        messagesReceived = Counter.builder("websocket.messages.received").description("收到的客户端消息数").register(meterRegistry);
+        bytesReceived = Counter.builder("websocket.received.bytes").baseUnit("bytes").description("收到的客户端消息字节数")
+                .register(meterRegistry);
+        messagesSent = Counter.builder("websocket.messages.sent").description("写出成功的消息数，批量消息按其中的消息分别计数")
+                .register(meterRegistry);
+        framesSent = Counter.builder("websocket.frames.sent").description("写出成功的帧数").register(meterRegistry);
+        bytesSent = Counter.builder("websocket.sent.bytes").baseUnit("bytes").description("写出成功的帧字节数").register(meterRegistry);
+        sendFailures = Counter.builder("websocket.send.failures").description("写出失败（含超时、会话已关闭）的消息数")
+                .register(meterRegistry);
+        sendLatency.register(meterRegistry, "websocket.send.latency", "消息进入发送队列到写出完成的耗时", Tags.empty());
+        broadcastDuration.register(meterRegistry, "websocket.broadcast.duration", "一次广播从开始投递到所有接收者写完的耗时",
+                Tags.empty());
+        broadcastRecipients = Counter.builder("websocket.broadcast.recipients").description("广播的接收者总数")
+                .register(meterRegistry);
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    public void messageReceived(long bytes) {
+        messagesReceived.increment();
+        bytesReceived.increment(bytes);
+    }
+
+    /**
+     * 一个帧写出成功
+     */
+    public void frameSent(long bytes) {
+        framesSent.increment();
+        bytesSent.increment(bytes);
+    }
+
+    /**
+     * 一条消息写出成功
+     * @param latencyNanos 进入发送队列到写出完成的耗时
+     */
+    public void messageSent(long latencyNanos) {
+        messagesSent.increment();
+        sendLatency.record(latencyNanos);
+    }
+
+    public void sendFailed(int messages) {
+        sendFailures.increment(messages);
+    }
+
+    public void broadcastCompleted(long durationNanos, int recipients) {
+        broadcastDuration.record(durationNanos);
+        broadcastRecipients.increment(recipients);
+    }
+
+    /**
+     * 文本的 UTF-8 编码字节数，不实际编码
+     */
+    public static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                bytes += 2;
+                //代理对两个字符共 4 字节
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    i++;
+                }
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.jobs.protocol;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息信封，服务端推送给客户端的所有消息都包装为 类型 + ID + 时间戳 + 内容，
+ * 客户端按字段读取，不再需要从拼接的文本中解析
+ * 带合并键的信封表示"只关心最新值"的状态消息：同一会话中同一合并键尚未发出的旧消息会被新消息替换，
+ * 合并键只在服务端使用，不参与编码
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class Envelope {
+
+    //消息 ID 序列，起始值随机，降低多个节点生成相同 ID 的概率
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong(ThreadLocalRandom.current().nextInt() & 0x7FFFFFFFL);
+
+    private final MessageType type;
+
+    private final long id;
+
+    //消息生成时间（毫秒时间戳）
+    private final long timestamp;
+
+    private final String payload;
+
+    //合并键，为 null 时消息不合并
+    private final String conflationKey;
+
+    public Envelope(MessageType type, long id, long timestamp, String payload) {
+        this(type, id, timestamp, payload, null);
+    }
+
+    public Envelope(MessageType type, long id, long timestamp, String payload, String conflationKey) {
+        this.type = type;
+        this.id = id;
+        this.timestamp = timestamp;
+        this.payload = payload;
+        this.conflationKey = conflationKey;
+    }
+
+    /**
+     * 以当前时间和新的消息 ID 创建信封
+     */
+    public static Envelope of(MessageType type, String payload) {
+        return new Envelope(type, nextId(), System.currentTimeMillis(), payload);
+    }
+
+    /**
+     * 以当前时间和新的消息 ID 创建带合并键的信封，同一会话只投递该合并键的最新一条
+     */
+    public static Envelope conflating(MessageType type, String conflationKey, String payload) {
+        return new Envelope(type, nextId(), System.currentTimeMillis(), payload, conflationKey);
+    }
+
+    /**
+     * 分配新的消息 ID
+     */
+    public static long nextId() {
+        return ID_SEQUENCE.incrementAndGet();
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public String getConflationKey() {
+        return conflationKey;
+    }
+
+    @Override
+    public String toString() {
+        return "Envelope{type=" + type + ", id=" + id + ", timestamp=" + timestamp + ", payload=" + payload + "}";
+    }
+}
@@ -0,0 +1,276 @@
+package com.jobs.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 信封编解码
+ * 二进制格式：版本(1 字节) + 类型(1 字节) + ID(变长整数) + 时间戳(变长整数) + 内容(UTF-8，直到帧结束)，
+ * 变长整数每字节 7 位、低位在前，时间戳约 6 字节，固定开销一般不超过 12 字节；
+ * 类型字节的最高位为 1 时内容经过 deflate 压缩（不带 zlib 头）；
+ * JSON 格式：{"type":"SCHEDULED","id":1,"timestamp":1700000000000,"payload":"..."}
+ * 批量消息（BATCH）的内容由多条已编码的消息组成：二进制格式为 [长度(变长整数) + 消息] 依次排列，
+ * JSON 格式的 payload 为消息对象数组；
+ * 带序号的消息（SEQUENCED）以序号作为 ID，内容为一条已编码的消息，二进制格式直接跟在头部之后，JSON 格式的 payload 为消息对象
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class EnvelopeCodec {
+
+    public static final int VERSION = 1;
+
+    //类型字节中的压缩标志位
+    public static final int FLAG_DEFLATE = 0x80;
+
+    //未指定上限时解压后内容的最大字节数，防止少量压缩数据解出巨大内容耗尽内存
+    public static final int DEFAULT_MAX_INFLATED_SIZE = 1024 * 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private EnvelopeCodec() {
+    }
+
+    /**
+     * 编码为二进制
+     */
+    public static byte[] encodeBinary(Envelope envelope) {
+        return encodeBinary(envelope, envelope.getPayload().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * 使用已编码的内容编码为二进制
+     * @param payload  内容的 UTF-8 编码，deflated 为 true 时为压缩后的数据
+     * @param deflated 内容是否经过 deflate 压缩
+     */
+    public static byte[] encodeBinary(Envelope envelope, byte[] payload, boolean deflated) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + varLongSize(envelope.getId()) + varLongSize(envelope.getTimestamp()) + payload.length);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (envelope.getType().getCode() | (deflated ? FLAG_DEFLATE : 0)));
+        putVarLong(buffer, envelope.getId());
+        putVarLong(buffer, envelope.getTimestamp());
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    /**
+     * 把多条已编码的二进制消息编码为一条批量消息
+     */
+    public static byte[] encodeBinaryBatch(long id, long timestamp, List<ByteBuffer> messages) {
+        int size = 2 + varLongSize(id) + varLongSize(timestamp);
+        for (ByteBuffer message : messages) {
+            size += varLongSize(message.remaining()) + message.remaining();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) MessageType.BATCH.getCode());
+        putVarLong(buffer, id);
+        putVarLong(buffer, timestamp);
+        for (ByteBuffer message : messages) {
+            putVarLong(buffer, message.remaining());
+            buffer.put(message.duplicate());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 给一条已编码的二进制消息加上序号头，消息本身不重新编码
+     */
+    public static byte[] encodeBinarySequenced(long seq, long timestamp, ByteBuffer message) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + varLongSize(seq) + varLongSize(timestamp) + message.remaining());
+        buffer.put((byte) VERSION);
+        buffer.put((byte) MessageType.SEQUENCED.getCode());
+        putVarLong(buffer, seq);
+        putVarLong(buffer, timestamp);
+        buffer.put(message.duplicate());
+        return buffer.array();
+    }
+
+    /**
+     * 解码二进制批量消息，不修改传入缓冲区的 position
+     */
+    public static List<Envelope> decodeBinaryBatch(ByteBuffer frame) {
+        ByteBuffer buffer = frame.duplicate();
+        if (buffer.remaining() < 4 || (buffer.get(buffer.position() + 1) & 0xFF) != MessageType.BATCH.getCode()) {
+            throw new IllegalArgumentException("不是批量消息");
+        }
+        buffer.position(buffer.position() + 2);
+        getVarLong(buffer);
+        getVarLong(buffer);
+        List<Envelope> envelopes = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = (int) getVarLong(buffer);
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("批量消息长度不足");
+            }
+            ByteBuffer message = buffer.slice();
+            message.limit(length);
+            envelopes.add(decodeBinary(message));
+            buffer.position(buffer.position() + length);
+        }
+        return envelopes;
+    }
+
+    /**
+     * 从二进制解码，不修改传入缓冲区的 position，解压后的内容最多 {@link #DEFAULT_MAX_INFLATED_SIZE} 字节
+     */
+    public static Envelope decodeBinary(ByteBuffer frame) {
+        return decodeBinary(frame, DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * 从二进制解码，不修改传入缓冲区的 position
+     * @param maxInflatedSize 压缩内容解压后的最大字节数，超过时抛出 IllegalArgumentException
+     */
+    public static Envelope decodeBinary(ByteBuffer frame, int maxInflatedSize) {
+        ByteBuffer buffer = frame.duplicate();
+        if (buffer.remaining() < 4) {
+            throw new IllegalArgumentException("消息帧长度不足");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的消息版本：" + version);
+        }
+        int typeByte = buffer.get() & 0xFF;
+        MessageType type = MessageType.fromCode(typeByte & ~FLAG_DEFLATE);
+        long id = getVarLong(buffer);
+        long timestamp = getVarLong(buffer);
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        if ((typeByte & FLAG_DEFLATE) != 0) {
+            payload = inflate(payload, maxInflatedSize);
+        }
+        return new Envelope(type, id, timestamp, new String(payload, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] inflate(byte[] data, int maxSize) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[Math.min(maxSize, Math.max(64, data.length * 4))];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (length >= maxSize) {
+                        //已到上限，还能解出数据说明内容超限
+                        if (inflater.inflate(new byte[1]) > 0) {
+                            throw new IllegalArgumentException("解压后的内容超过 " + maxSize + " 字节");
+                        }
+                        break;
+                    }
+                    out = Arrays.copyOf(out, (int) Math.min(maxSize, out.length * 2L));
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            return Arrays.copyOf(out, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩内容无法解压：" + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 编码为 JSON
+     */
+    public static String encodeJson(Envelope envelope) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("type", envelope.getType().name());
+        node.put("id", envelope.getId());
+        node.put("timestamp", envelope.getTimestamp());
+        node.put("payload", envelope.getPayload());
+        return node.toString();
+    }
+
+    /**
+     * 把多条已编码的 JSON 消息编码为一条批量消息
+     */
+    public static String encodeJsonBatch(long id, long timestamp, List<String> messages) {
+        StringBuilder builder = new StringBuilder(64 + messages.size() * 128);
+        builder.append("{\"type\":\"").append(MessageType.BATCH.name())
+                .append("\",\"id\":").append(id)
+                .append(",\"timestamp\":").append(timestamp)
+                .append(",\"payload\":[");
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(messages.get(i));
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * 给一条已编码的 JSON 消息加上序号
+     */
+    public static String encodeJsonSequenced(long seq, long timestamp, String message) {
+        return new StringBuilder(64 + message.length())
+                .append("{\"type\":\"").append(MessageType.SEQUENCED.name())
+                .append("\",\"id\":").append(seq)
+                .append(",\"timestamp\":").append(timestamp)
+                .append(",\"payload\":").append(message)
+                .append('}').toString();
+    }
+
+    /**
+     * 从 JSON 解码，客户端可以省略 id 和 timestamp
+     */
+    public static Envelope decodeJson(String json) {
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("消息不是合法的 JSON：" + e.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("消息不是 JSON 对象");
+        }
+        MessageType type = node.hasNonNull("type") ? MessageType.valueOf(node.get("type").asText()) : MessageType.DIRECT;
+        return new Envelope(type, node.path("id").asLong(), node.path("timestamp").asLong(), node.path("payload").asText(""));
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("变长整数不完整");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数过长");
+    }
+}
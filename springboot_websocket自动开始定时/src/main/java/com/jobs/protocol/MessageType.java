@@ -0,0 +1,98 @@
+package com.jobs.protocol;
+
+/**
+ * 服务端推送的消息类型，code 用于二进制编码
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public enum MessageType {
+
+    /**
+     * 发给指定用户的消息
+     */
+    DIRECT(1),
+
+    /**
+     * 对客户端消息的回显
+     */
+    ECHO(2),
+
+    /**
+     * 手动触发的广播
+     */
+    BROADCAST(3),
+
+    /**
+     * 定时推送
+     */
+    SCHEDULED(4),
+
+    /**
+     * 早安、下班提醒等固定时刻的通知
+     */
+    NOTICE(5),
+
+    /**
+     * 批量消息，内容为同一会话在攒批窗口内的多条消息
+     */
+    BATCH(6),
+
+    /**
+     * 客户端订阅频道，内容为频道名，服务端以同类型消息确认
+     */
+    SUBSCRIBE(7),
+
+    /**
+     * 客户端退订频道，内容为频道名，服务端以同类型消息确认
+     */
+    UNSUBSCRIBE(8),
+
+    /**
+     * 发布到频道的消息，只推送给订阅了该频道的会话
+     */
+    CHANNEL(9),
+
+    /**
+     * 客户端的累计确认，信封 ID 为已按顺序收到的最大序号
+     */
+    ACK(10),
+
+    /**
+     * 可靠投递握手，服务端在连接建立后发出，内容为 投递流ID:已确认的序号，客户端据此续传或重新开始
+     */
+    RESUME(11),
+
+    /**
+     * 带序号的消息，信封 ID 为该会话投递流中的序号，内容为一条已编码的消息
+     */
+    SEQUENCED(12);
+
+    private static final MessageType[] BY_CODE = new MessageType[16];
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+
+    MessageType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * 根据编码获取消息类型
+     */
+    public static MessageType fromCode(int code) {
+        MessageType type = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (type == null) {
+            throw new IllegalArgumentException("未知的消息类型编码：" + code);
+        }
+        return type;
+    }
+}
@@ -1,12 +1,18 @@
 package com.jobs.service;
 
+import com.jobs.cluster.ScheduledJobRunner;
+import com.jobs.concurrent.PartitionedExecutor;
+import com.jobs.protocol.MessageType;
+import com.jobs.websocket.BroadcastResult;
 import com.jobs.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 定时消息推送服务
@@ -19,22 +25,37 @@ public class ScheduledMessageService {
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    @Autowired
+    private ScheduledJobRunner scheduledJobRunner;
+
+    //定时器线程只负责触发，推送在分区执行器中进行，耗时较长的推送不会推迟其它定时任务的触发
+    @Autowired
+    private PartitionedExecutor jobExecutor;
+
     /**
      * 每30秒向所有在线用户推送一次消息
      * 可以通过cron表达式自定义推送时间
+     * 每个节点都会触发，只有该任务的 leader 生成消息并分发到集群
+     * 推送内容是当前状态，客户端积压时只保留最新一条
      */
     @Scheduled(fixedRate = 30000) // 每30秒执行一次
     public void sendScheduledMessage() {
-        int onlineCount = WebSocketServer.getOnlineUserCount();
-        
-        if (onlineCount > 0) {
+        jobExecutor.execute("sendScheduledMessage", this::pushScheduledMessage);
+    }
+
+    private void pushScheduledMessage() {
+        CompletableFuture<BroadcastResult> future = scheduledJobRunner.runIfLeader("sendScheduledMessage", MessageType.SCHEDULED, true, () -> {
+            int onlineCount = WebSocketServer.getClusterOnlineUserCount();
+            if (onlineCount == 0) {
+                log.info("当前无在线用户，跳过定时推送");
+                return null;
+            }
             String currentTime = LocalDateTime.now().format(FORMATTER);
-            String message = String.format("【定时推送】当前时间：%s，在线用户数：%d", currentTime, onlineCount);
-            
             log.info("开始执行定时推送，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
-        } else {
-            log.info("当前无在线用户，跳过定时推送");
+            return String.format("【定时推送】当前时间：%s，在线用户数：%d", currentTime, onlineCount);
+        });
+        if (future != null) {
+            future.thenAccept(result -> log.info("定时推送完成（本节点）：{}", result));
         }
     }
 
@@ -43,12 +64,20 @@ public class ScheduledMessageService {
      */
     @Scheduled(cron = "0 0 9 * * ?")
     public void sendMorningMessage() {
-        int onlineCount = WebSocketServer.getOnlineUserCount();
-        
-        if (onlineCount > 0) {
-            String message = "【早安推送】早上好！新的一天开始了，祝您工作愉快！";
+        jobExecutor.execute("sendMorningMessage", this::pushMorningMessage);
+    }
+
+    private void pushMorningMessage() {
+        CompletableFuture<BroadcastResult> future = scheduledJobRunner.runIfLeader("sendMorningMessage", MessageType.NOTICE, () -> {
+            int onlineCount = WebSocketServer.getClusterOnlineUserCount();
+            if (onlineCount == 0) {
+                return null;
+            }
             log.info("发送早安消息，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
+            return "【早安推送】早上好！新的一天开始了，祝您工作愉快！";
+        });
+        if (future != null) {
+            future.thenAccept(result -> log.info("早安消息推送完成（本节点）：{}", result));
         }
     }
 
@@ -57,12 +86,20 @@ public class ScheduledMessageService {
      */
     @Scheduled(cron = "0 0 18 * * ?")
     public void sendEveningMessage() {
-        int onlineCount = WebSocketServer.getOnlineUserCount();
-        
-        if (onlineCount > 0) {
-            String message = "【下班提醒】辛苦了！今天的工作即将结束，记得休息哦！";
+        jobExecutor.execute("sendEveningMessage", this::pushEveningMessage);
+    }
+
+    private void pushEveningMessage() {
+        CompletableFuture<BroadcastResult> future = scheduledJobRunner.runIfLeader("sendEveningMessage", MessageType.NOTICE, () -> {
+            int onlineCount = WebSocketServer.getClusterOnlineUserCount();
+            if (onlineCount == 0) {
+                return null;
+            }
             log.info("发送下班提醒，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
+            return "【下班提醒】辛苦了！今天的工作即将结束，记得休息哦！";
+        });
+        if (future != null) {
+            future.thenAccept(result -> log.info("下班提醒推送完成（本节点）：{}", result));
         }
     }
 
@@ -70,14 +107,10 @@ public class ScheduledMessageService {
      * 手动触发定时推送（用于测试）
      */
     public void sendManualMessage(String customMessage) {
-        int onlineCount = WebSocketServer.getOnlineUserCount();
-        
-        if (onlineCount > 0) {
-            String message = "【手动推送】" + customMessage;
-            log.info("发送手动推送消息，在线用户数：{}", onlineCount);
-            WebSocketServer.sendMessageToAll(message);
-        } else {
-            log.warn("当前无在线用户，无法发送手动推送消息");
-        }
+        //其它节点上可能有在线用户，本节点无在线用户时也要经集群总线发出
+        String message = "【手动推送】" + customMessage;
+        log.info("发送手动推送消息，本节点在线用户数：{}", WebSocketServer.getOnlineUserCount());
+        WebSocketServer.sendMessageToCluster(MessageType.BROADCAST, message)
+                .thenAccept(result -> log.info("手动推送完成（本节点）：{}", result));
     }
 }
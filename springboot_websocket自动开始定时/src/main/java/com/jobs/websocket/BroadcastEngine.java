@@ -0,0 +1,229 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import com.jobs.logging.SampledLogger;
+import com.jobs.metrics.WebSocketMetrics;
+import com.jobs.protocol.Envelope;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.SendResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 异步广播引擎
+ * 广播线程只负责把消息投递到各会话的发送队列，真正的写出由 AsyncRemote 完成，
+ * 因此广播耗时不会被个别慢客户端拖长，所有会话写完后通过 CompletableFuture 回调汇总结果
+ * 发布到频道时只遍历频道索引中的订阅者，不扫描全部在线会话
+ * 单个接收者的发送结果只计入汇总，不逐条记日志，发送失败按限流日志输出，每次广播由调用方根据汇总结果记一行
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+@Component
+public class BroadcastEngine {
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @Autowired
+    private TickSharding tickSharding;
+
+    @Autowired
+    private ChannelRegistry channelRegistry;
+
+    @Autowired
+    private WebSocketMetrics webSocketMetrics;
+
+    //单个接收者发送失败的限流日志
+    private SampledLogger failureLog;
+
+    //分片推送时按时间片延迟投递，投递本身只是入队，一个线程足够
+    private final ScheduledExecutorService shardExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "broadcast-shard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        failureLog = new SampledLogger(log, "广播发送失败", webSocketProperties.getLogging().getMaxPerSecond());
+    }
+
+    /**
+     * 向所有在线用户广播消息
+     */
+    public CompletableFuture<BroadcastResult> broadcast(Envelope envelope) {
+        return broadcast(envelope, client -> true);
+    }
+
+    /**
+     * 向满足条件的在线用户广播消息
+     * 开启 encode-once 时每种传输格式只编码一次，编码结果共享给所有接收者
+     * @return 所有接收者发送完成（成功、失败或超时）后完成的 Future
+     */
+    public CompletableFuture<BroadcastResult> broadcast(Envelope envelope, Predicate<ClientSession> filter) {
+        return broadcast(envelope, filter, false);
+    }
+
+    /**
+     * 向满足条件的在线用户广播消息
+     * @param sharded 是否按时间片分批发送，用于定时推送，未开启分片配置时等同于立即发送
+     * @return 所有接收者发送完成（成功、失败或超时）后完成的 Future
+     */
+    public CompletableFuture<BroadcastResult> broadcast(Envelope envelope, Predicate<ClientSession> filter, boolean sharded) {
+        return broadcast(sessionRegistry.getSessions(), envelope, filter, sharded);
+    }
+
+    /**
+     * 向订阅了频道的本节点会话发布消息
+     * @param sharded 是否按时间片分批发送
+     * @return 所有订阅者发送完成后完成的 Future，没有订阅者时立即完成
+     */
+    public CompletableFuture<BroadcastResult> publish(String channel, Envelope envelope, boolean sharded) {
+        return publish(channel, envelope, client -> true, sharded);
+    }
+
+    /**
+     * 向订阅了频道且满足条件的本节点会话发布消息，条件只对订阅者判断
+     * @return 所有接收者发送完成后完成的 Future，没有订阅者时立即完成
+     */
+    public CompletableFuture<BroadcastResult> publish(String channel, Envelope envelope, Predicate<ClientSession> filter, boolean sharded) {
+        return broadcast(channelRegistry.subscribers(channel), envelope, filter, sharded);
+    }
+
+    private CompletableFuture<BroadcastResult> broadcast(Collection<ClientSession> recipients, Envelope envelope,
+                                                         Predicate<ClientSession> filter, boolean sharded) {
+        BroadcastTracker tracker = new BroadcastTracker(webSocketMetrics, failureLog);
+        BroadcastFrame frame = webSocketProperties.isEncodeOnce() ? BroadcastFrame.of(envelope) : null;
+        if (sharded && tickSharding.isEnabled()) {
+            dispatchSharded(recipients, envelope, frame, filter, tracker);
+        } else {
+            for (ClientSession client : recipients) {
+                if (client.isOpen() && filter.test(client)) {
+                    dispatch(client, envelope, frame, tracker);
+                }
+            }
+        }
+        tracker.seal();
+        return tracker.future;
+    }
+
+    /**
+     * 遍历一次接收者把它们按时间片分组，每个时间片延迟到各自的时间点再投递
+     */
+    private void dispatchSharded(Collection<ClientSession> recipients, Envelope envelope, BroadcastFrame frame,
+                                 Predicate<ClientSession> filter, BroadcastTracker tracker) {
+        int slots = tickSharding.getSlots();
+        List<List<ClientSession>> buckets = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (ClientSession client : recipients) {
+            if (client.isOpen() && filter.test(client)) {
+                buckets.get(tickSharding.slotOf(client.getUsername())).add(client);
+            }
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            List<ClientSession> bucket = buckets.get(slot);
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            //每个时间片在投递完成前占用一个 pending，避免广播提前完成
+            tracker.hold();
+            shardExecutor.schedule(() -> {
+                try {
+                    for (ClientSession client : bucket) {
+                        dispatch(client, envelope, frame, tracker);
+                    }
+                } finally {
+                    tracker.arrive();
+                }
+            }, tickSharding.slotDelayMillis(slot), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch(ClientSession client, Envelope envelope, BroadcastFrame frame, BroadcastTracker tracker) {
+        tracker.dispatch();
+        if (frame != null) {
+            client.send(frame, result -> tracker.onResult(client, result));
+        } else {
+            client.send(envelope, result -> tracker.onResult(client, result));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shardExecutor.shutdownNow();
+    }
+
+    /**
+     * 跟踪一次广播的完成情况
+     * pending 初始为 1，代表投递循环本身，投递结束后再减掉，避免投递过程中提前完成
+     */
+    private static final class BroadcastTracker {
+        private final WebSocketMetrics metrics;
+        private final SampledLogger failureLog;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger recipients = new AtomicInteger();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger superseded = new AtomicInteger();
+        private final CompletableFuture<BroadcastResult> future = new CompletableFuture<>();
+
+        private BroadcastTracker(WebSocketMetrics metrics, SampledLogger failureLog) {
+            this.metrics = metrics;
+            this.failureLog = failureLog;
+        }
+
+        private void dispatch() {
+            recipients.incrementAndGet();
+            pending.incrementAndGet();
+        }
+
+        private void hold() {
+            pending.incrementAndGet();
+        }
+
+        private void onResult(ClientSession client, SendResult result) {
+            if (result.isOK()) {
+                succeeded.incrementAndGet();
+            } else if (SupersededException.isSuperseded(result)) {
+                //被新值替换是合并的预期结果，不算失败
+                superseded.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                failureLog.warn("向用户 {} 广播消息失败: {}", client.getUsername(), result.getException().getMessage());
+            }
+            arrive();
+        }
+
+        private void seal() {
+            arrive();
+        }
+
+        private void arrive() {
+            if (pending.decrementAndGet() == 0) {
+                long durationNanos = System.nanoTime() - startNanos;
+                metrics.broadcastCompleted(durationNanos, recipients.get());
+                future.complete(new BroadcastResult(recipients.get(), succeeded.get(), failed.get(), superseded.get(),
+                        TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+            }
+        }
+    }
+}
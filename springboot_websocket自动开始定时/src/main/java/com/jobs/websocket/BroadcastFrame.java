@@ -0,0 +1,138 @@
+package com.jobs.websocket;
+
+import com.jobs.metrics.WebSocketMetrics;
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.EnvelopeCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 待发送的消息帧
+ * 每种传输格式的编码结果在第一次用到时生成并缓存，广播时所有接收者共享同一个帧，
+ * 同一格式只编码一次，接收者拿到的是包装同一字节数组、独立 position/limit 的视图，不会复制底层数据
+ * 视图不能是只读缓冲区：Tomcat 的 permessage-deflate 通过 array() 读取待压缩数据，只读缓冲区会导致发送失败，
+ * 发送路径只读取视图，不会修改共享的数据
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class BroadcastFrame {
+
+    private final Envelope envelope;
+
+    //各格式的编码缓存，并发首次访问时可能重复编码，结果相同，不需要加锁
+    private volatile byte[] binary;
+
+    private volatile byte[] compressedBinary;
+
+    private volatile String json;
+
+    //JSON 编码的 UTF-8 字节数，-1 表示尚未计算
+    private volatile int jsonLength = -1;
+
+    //消息内容的 UTF-8 字节数，-1 表示尚未计算
+    private volatile int textLength = -1;
+
+    private BroadcastFrame(Envelope envelope) {
+        this.envelope = envelope;
+    }
+
+    /**
+     * 创建消息帧，广播时由所有接收者共享，单发时只有一个接收者
+     */
+    public static BroadcastFrame of(Envelope envelope) {
+        return new BroadcastFrame(envelope);
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * 消息内容文本，LEGACY 格式使用，广播时所有接收者共享同一个字符串，以文本帧发出
+     */
+    public String text() {
+        return envelope.getPayload();
+    }
+
+    /**
+     * 消息内容的 UTF-8 字节数，只用于统计，不实际编码
+     */
+    public int textLength() {
+        int value = textLength;
+        if (value < 0) {
+            value = WebSocketMetrics.utf8Length(text());
+            textLength = value;
+        }
+        return value;
+    }
+
+    /**
+     * 信封的二进制编码
+     */
+    public ByteBuffer binary() {
+        byte[] bytes = binary;
+        if (bytes == null) {
+            bytes = EnvelopeCodec.encodeBinary(envelope);
+            binary = bytes;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * 信封二进制编码的字节数
+     */
+    public int binaryLength() {
+        byte[] bytes = binary;
+        if (bytes == null) {
+            return binary().remaining();
+        }
+        return bytes.length;
+    }
+
+    /**
+     * 信封的二进制编码，内容达到压缩阈值时经过压缩
+     */
+    public ByteBuffer compressedBinary(FrameCompressor compressor) {
+        byte[] bytes = compressedBinary;
+        if (bytes == null) {
+            bytes = compressor.encode(envelope);
+            compressedBinary = bytes;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * 信封压缩后二进制编码的字节数
+     */
+    public int compressedBinaryLength(FrameCompressor compressor) {
+        byte[] bytes = compressedBinary;
+        if (bytes == null) {
+            return compressedBinary(compressor).remaining();
+        }
+        return bytes.length;
+    }
+
+    /**
+     * 信封的 JSON 编码
+     */
+    public String json() {
+        String value = json;
+        if (value == null) {
+            value = EnvelopeCodec.encodeJson(envelope);
+            json = value;
+        }
+        return value;
+    }
+
+    /**
+     * JSON 编码的 UTF-8 字节数，只用于统计，不实际编码
+     */
+    public int jsonLength() {
+        int value = jsonLength;
+        if (value < 0) {
+            value = WebSocketMetrics.utf8Length(json());
+            jsonLength = value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,673 @@
+package com.jobs.websocket;
+
+import com.jobs.config.CompressionConfigurator;
+import com.jobs.config.WebSocketProperties;
+import com.jobs.metrics.WebSocketMetrics;
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.EnvelopeCodec;
+import com.jobs.protocol.WireProtocol;
+
+import javax.websocket.Extension;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端会话，封装 Socket Session 以及该会话的待发送消息队列
+ * 所有发往该会话的消息都通过 AsyncRemote 异步写出，同一会话同一时刻只有一条消息在写，
+ * 上一条写完（或超时失败）后再写下一条，调用方线程不会被慢客户端阻塞
+ * 发送队列有容量上限，队列写满后按配置的溢出策略处理，避免慢客户端无限占用内存
+ * 消息按建立连接时协商的子协议编码：二进制信封、JSON 信封或只发送内容文本，
+ * 二进制信封在未协商 permessage-deflate 时使用信封级压缩，避免重复压缩
+ * 开启攒批后，会话空闲时到达的消息先等待一个攒批窗口，窗口内积压的多条消息合并为一个批量信封写出，
+ * 写出期间新到达的消息在上一批写完后直接合并发送
+ * 带合并键的消息在队列中只占一个位置：队列里保存的是占位消息，最新的值存放在 conflated 中，
+ * 同一合并键的新消息在旧值发出前到达时直接替换旧值，出队时取走当时的最新值，慢客户端不会积压过期的状态
+ * 开启可靠投递的会话写出时给每条消息加上投递流中的序号，已写出未确认的消息达到重传窗口大小后暂停写出，收到确认后继续
+ * 写出完成时记录帧数、字节数以及每条消息从入队到写完的耗时，失败的消息计入发送失败数
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class ClientSession {
+
+    private final String username;
+
+    private final Session session;
+
+    private final WebSocketProperties.Outbound outboundProperties;
+
+    private final OutboundMonitor outboundMonitor;
+
+    private final FrameCompressor frameCompressor;
+
+    private final OutboundBatcher outboundBatcher;
+
+    private final WebSocketMetrics metrics;
+
+    //建立连接时协商出的传输格式
+    private final WireProtocol protocol;
+
+    //是否协商了 permessage-deflate，协商后容器会压缩该会话的所有消息
+    private final boolean perMessageDeflate;
+
+    //待发送的消息队列
+    private final Queue<OutboundMessage> outbound = new ConcurrentLinkedQueue<>();
+
+    //带合并键的消息尚未发出的最新值，key 是合并键，队列中有且只有一条对应的占位消息
+    private final ConcurrentHashMap<String, OutboundMessage> conflated = new ConcurrentHashMap<>();
+
+    //待发送队列中的消息数（不含正在写出的消息），入队前先占位，保证不超过容量上限
+    private final AtomicInteger depth = new AtomicInteger();
+
+    //当前是否有消息正在写出
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+
+    //是否已因消费过慢被断开
+    private volatile boolean evicted;
+
+    //该会话订阅的频道，会话关闭时据此从频道索引中移除
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+    //是否已退订所有频道，之后并发到达的订阅由 ChannelRegistry 撤销
+    private volatile boolean channelsReleased;
+
+    //该会话是否攒批发送，LEGACY 格式没有信封，不攒批
+    private final boolean batching;
+
+    //攒批窗口内等待触发的发送任务，窗口到期前队列攒满时取消它并立即发送
+    private volatile ScheduledFuture<?> pendingFlush;
+
+    //可靠投递流，未开启可靠投递时为 null
+    private volatile DeliveryStream deliveryStream;
+
+    //最近一次收到客户端数据（消息或 pong）的时间（纳秒），心跳检测据此判断连接是否存活
+    private volatile long lastActive = System.nanoTime();
+
+    public ClientSession(String username, Session session, WebSocketProperties properties, OutboundMonitor outboundMonitor,
+                         FrameCompressor frameCompressor, OutboundBatcher outboundBatcher, WebSocketMetrics metrics) {
+        this.username = username;
+        this.session = session;
+        this.outboundProperties = properties.getOutbound();
+        this.outboundMonitor = outboundMonitor;
+        this.frameCompressor = frameCompressor;
+        this.outboundBatcher = outboundBatcher;
+        this.metrics = metrics;
+        this.protocol = WireProtocol.fromSubprotocol(session.getNegotiatedSubprotocol());
+        this.perMessageDeflate = hasPerMessageDeflate(session);
+        this.batching = outboundBatcher.isEnabled(protocol);
+        //设置异步发送超时时间，超时后 SendHandler 会收到失败结果
+        session.getAsyncRemote().setSendTimeout(properties.getSendTimeout());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * 标记会话已退订所有频道，由 ChannelRegistry 在退订前调用
+     */
+    void releaseChannels() {
+        channelsReleased = true;
+    }
+
+    boolean isChannelsReleased() {
+        return channelsReleased;
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    public boolean isPerMessageDeflate() {
+        return perMessageDeflate;
+    }
+
+    private static boolean hasPerMessageDeflate(Session session) {
+        for (Extension extension : session.getNegotiatedExtensions()) {
+            if (CompressionConfigurator.PER_MESSAGE_DEFLATE.equals(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 该会话订阅的频道
+     */
+    public Set<String> getChannels() {
+        return channels;
+    }
+
+    public DeliveryStream getDeliveryStream() {
+        return deliveryStream;
+    }
+
+    /**
+     * 开启可靠投递，在会话注册前调用；握手消息不带序号，先于其它消息写出
+     */
+    public void attach(DeliveryStream stream, Envelope handshake) {
+        stream.attach(this);
+        deliveryStream = stream;
+        //会话尚未注册，没有其它线程在写，直接取得写出权
+        sending.set(true);
+        write(new OutboundMessage(BroadcastFrame.of(handshake), null, null));
+    }
+
+    /**
+     * 处理客户端的累计确认，窗口腾出空位后继续写出
+     */
+    public void ack(long seq) {
+        DeliveryStream stream = deliveryStream;
+        if (stream != null && stream.ack(seq)) {
+            drain(false);
+        }
+    }
+
+    /**
+     * 记录收到了客户端的数据
+     */
+    public void markActive() {
+        lastActive = System.nanoTime();
+    }
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * 当前是否有消息正在写出
+     */
+    public boolean isWriting() {
+        return sending.get();
+    }
+
+    /**
+     * 当前待发送队列深度
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * 异步发送单条消息，立即返回
+     * @param callback 发送完成回调，可以为 null
+     */
+    public void send(Envelope envelope, SendHandler callback) {
+        enqueue(new OutboundMessage(BroadcastFrame.of(envelope), callback, null));
+    }
+
+    /**
+     * 异步发送单条消息，立即返回
+     * @param callback 发送完成回调，可以为 null
+     * @param onAcked  客户端确认后执行，未开启可靠投递的会话写出成功即视为确认
+     */
+    public void send(Envelope envelope, SendHandler callback, Runnable onAcked) {
+        enqueue(new OutboundMessage(BroadcastFrame.of(envelope), callback, onAcked));
+    }
+
+    /**
+     * 异步发送广播帧，与其它接收者共享编码结果，立即返回
+     * @param callback 发送完成回调，可以为 null
+     */
+    public void send(BroadcastFrame frame, SendHandler callback) {
+        enqueue(new OutboundMessage(frame, callback, null));
+    }
+
+    private void enqueue(OutboundMessage message) {
+        if (evicted) {
+            fail(message, "会话已因消费过慢被断开");
+            return;
+        }
+        String conflationKey = message.frame.getEnvelope().getConflationKey();
+        if (conflationKey != null) {
+            OutboundMessage previous = conflated.put(conflationKey, message);
+            if (previous != null) {
+                //旧值尚未发出，队列中已有占位消息，出队时会取到新值
+                outboundMonitor.recordSuperseded();
+                if (previous.callback != null) {
+                    previous.callback.onResult(new SendResult(new SupersededException("消息已被同一合并键的新消息替换")));
+                }
+                return;
+            }
+        }
+        if (!reserve()) {
+            //占位失败时该合并键的值可能已被替换，失败的是当时的最新值，被替换的旧值已经通知过
+            OutboundMessage latest = conflationKey != null ? conflated.remove(conflationKey) : message;
+            fail(latest != null ? latest : message, "发送队列已满，会话已断开");
+            return;
+        }
+        outbound.offer(message);
+        drain(true);
+    }
+
+    /**
+     * 为新消息占一个队列位置，队列已满时按溢出策略腾出位置
+     * @return 是否占位成功，DISCONNECT 策略下队列已满返回 false
+     */
+    private boolean reserve() {
+        int capacity = outboundProperties.getCapacity();
+        while (true) {
+            int current = depth.get();
+            if (current < capacity) {
+                if (depth.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            switch (outboundProperties.getOverflowPolicy()) {
+                case DROP_OLDEST:
+                    //丢弃最旧的一条待发送消息
+                    OutboundMessage oldest = poll();
+                    if (oldest != null) {
+                        outboundMonitor.recordDropped(1);
+                        fail(oldest, "发送队列已满，消息被丢弃");
+                    }
+                    break;
+                case COALESCE:
+                    //丢弃全部积压消息，只保留最新的一条
+                    outboundMonitor.recordCoalesced(discardAll("发送队列已满，消息被新消息合并"));
+                    break;
+                case DISCONNECT:
+                default:
+                    evict();
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * 断开慢客户端，清空其待发送队列
+     */
+    private void evict() {
+        if (evicted) {
+            return;
+        }
+        evicted = true;
+        discardAll("会话已因消费过慢被断开");
+        outboundMonitor.evict(this);
+    }
+
+    /**
+     * 取出队首消息，占位消息换成该合并键当前的最新值
+     */
+    private OutboundMessage poll() {
+        OutboundMessage message = outbound.poll();
+        if (message == null) {
+            return null;
+        }
+        depth.decrementAndGet();
+        String conflationKey = message.frame.getEnvelope().getConflationKey();
+        if (conflationKey != null) {
+            OutboundMessage latest = conflated.remove(conflationKey);
+            if (latest != null) {
+                return latest;
+            }
+        }
+        return message;
+    }
+
+    private int discardAll(String reason) {
+        int discarded = 0;
+        OutboundMessage message;
+        while ((message = poll()) != null) {
+            fail(message, reason);
+            discarded++;
+        }
+        return discarded;
+    }
+
+    /**
+     * 如果当前没有消息在写，则取得写出权开始写出队列中的消息
+     * @param allowWait 是否允许先等待一个攒批窗口，上一批写完后队列中已积压的消息不再等待
+     */
+    private void drain(boolean allowWait) {
+        while (sending.compareAndSet(false, true)) {
+            if (writable()) {
+                if (allowWait && batching && depth.get() < outboundBatcher.getMaxMessages()) {
+                    pendingFlush = outboundBatcher.schedule(this::scheduledFlush);
+                } else {
+                    flush();
+                }
+                return;
+            }
+            sending.set(false);
+            //释放标记后如果又有新消息入队或窗口腾出空位，继续处理，否则结束
+            if (!writable()) {
+                return;
+            }
+        }
+        //正在等待攒批窗口时队列已攒满，取消等待立即发送，取消成功的线程接管写出权
+        if (batching && depth.get() >= outboundBatcher.getMaxMessages()) {
+            ScheduledFuture<?> flushTask = pendingFlush;
+            if (flushTask != null && flushTask.cancel(false)) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * 会话已关闭，持有写出权时在循环中逐条通知队列中的消息发送失败，再释放写出权，
+     * 不经过 complete -> drain -> flush 逐条递归，积压很多消息时也不会加深调用栈
+     * 可靠投递的重传窗口留给接续的会话，这里只清空发送队列
+     */
+    private void discardClosed() {
+        do {
+            int discarded = discardAll("会话 " + getId() + " 已关闭");
+            if (discarded > 0) {
+                metrics.sendFailed(discarded);
+            }
+            sending.set(false);
+            //释放写出权前并发入队的消息由这里继续清理，之后入队的消息由入队线程自己取得写出权清理
+        } while (!outbound.isEmpty() && sending.compareAndSet(false, true));
+    }
+
+    /**
+     * 是否有可以写出的消息，可靠投递的会话在重传窗口写满时暂停写出
+     */
+    private boolean writable() {
+        DeliveryStream stream = deliveryStream;
+        if (stream == null) {
+            return !outbound.isEmpty();
+        }
+        return stream.hasResend() || (!outbound.isEmpty() && stream.hasRoom());
+    }
+
+    private void scheduledFlush() {
+        pendingFlush = null;
+        flush();
+    }
+
+    /**
+     * 持有写出权时调用，取出一批消息写出，队列已被溢出策略清空时释放写出权
+     */
+    private void flush() {
+        if (!session.isOpen()) {
+            discardClosed();
+            return;
+        }
+        DeliveryStream stream = deliveryStream;
+        if (stream != null) {
+            flushSequenced(stream);
+            return;
+        }
+        OutboundMessage first = poll();
+        if (first == null) {
+            sending.set(false);
+            drain(false);
+            return;
+        }
+        if (!batching || outbound.isEmpty()) {
+            write(first);
+            return;
+        }
+        List<OutboundMessage> batch = new ArrayList<>();
+        batch.add(first);
+        int maxMessages = outboundBatcher.getMaxMessages();
+        int maxBytes = outboundBatcher.getMaxBytes();
+        int bytes = encodedSize(first.frame);
+        OutboundMessage next;
+        while (batch.size() < maxMessages && bytes < maxBytes && (next = poll()) != null) {
+            batch.add(next);
+            bytes += encodedSize(next.frame);
+        }
+        if (batch.size() == 1) {
+            write(first);
+        } else {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * 可靠投递的会话先取待重传的消息，再从队列中取新消息分配序号，不超过重传窗口和攒批上限
+     */
+    private void flushSequenced(DeliveryStream stream) {
+        int maxMessages = batching ? outboundBatcher.getMaxMessages() : 1;
+        int maxBytes = batching ? outboundBatcher.getMaxBytes() : Integer.MAX_VALUE;
+        List<DeliveryStream.Entry> entries = stream.pollResend(maxMessages);
+        List<OutboundMessage> messages = new ArrayList<>(maxMessages - entries.size());
+        int bytes = 0;
+        for (DeliveryStream.Entry entry : entries) {
+            bytes += encodedSize(entry.frame);
+        }
+        while (entries.size() < maxMessages && bytes < maxBytes && stream.hasRoom()) {
+            OutboundMessage message = poll();
+            if (message == null) {
+                break;
+            }
+            DeliveryStream.Entry entry = stream.append(this, message.frame, message.onAcked);
+            if (entry == null) {
+                fail(message, "会话已不再持有投递流");
+                continue;
+            }
+            entries.add(entry);
+            messages.add(message);
+            bytes += encodedSize(message.frame);
+        }
+        if (entries.isEmpty()) {
+            sending.set(false);
+            drain(false);
+            return;
+        }
+        writeSequenced(entries, messages);
+    }
+
+    private ByteBuffer binaryOf(BroadcastFrame frame) {
+        return perMessageDeflate ? frame.binary() : frame.compressedBinary(frameCompressor);
+    }
+
+    //攒批的字节上限按 UTF-8 字节计算，JSON 的字节数已缓存在广播帧上
+    private int encodedSize(BroadcastFrame frame) {
+        return protocol == WireProtocol.BINARY ? binaryOf(frame).remaining() : frame.jsonLength();
+    }
+
+    private void write(OutboundMessage message) {
+        if (!session.isOpen()) {
+            complete(message, new SendResult(new IllegalStateException("会话 " + getId() + " 已关闭")));
+            return;
+        }
+        BroadcastFrame frame = message.frame;
+        SendHandler handler = result -> complete(message, result);
+        try {
+            switch (protocol) {
+                case BINARY:
+                    session.getAsyncRemote().sendBinary(binaryOf(frame), handler);
+                    break;
+                case JSON:
+                    session.getAsyncRemote().sendText(frame.json(), handler);
+                    break;
+                case LEGACY:
+                default:
+                    //不指定子协议的旧客户端按文本读取消息，广播同样以文本帧发出
+                    session.getAsyncRemote().sendText(frame.text(), handler);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            complete(message, new SendResult(e));
+        }
+    }
+
+    /**
+     * 单条消息写出的帧字节数，各格式的编码结果已缓存，不重新编码
+     */
+    private int frameBytes(BroadcastFrame frame) {
+        switch (protocol) {
+            case BINARY:
+                return perMessageDeflate ? frame.binaryLength() : frame.compressedBinaryLength(frameCompressor);
+            case JSON:
+                return frame.jsonLength();
+            case LEGACY:
+            default:
+                return frame.textLength();
+        }
+    }
+
+    /**
+     * 把多条消息合并为一个批量信封写出，写出结果通知每条消息的回调
+     */
+    private void writeBatch(List<OutboundMessage> batch) {
+        if (!session.isOpen()) {
+            complete(batch, new SendResult(new IllegalStateException("会话 " + getId() + " 已关闭")), true, 0);
+            return;
+        }
+        outboundBatcher.recordBatch(batch.size());
+        long id = Envelope.nextId();
+        long timestamp = System.currentTimeMillis();
+        try {
+            if (protocol == WireProtocol.BINARY) {
+                List<ByteBuffer> messages = new ArrayList<>(batch.size());
+                for (OutboundMessage message : batch) {
+                    messages.add(binaryOf(message.frame));
+                }
+                byte[] frame = EnvelopeCodec.encodeBinaryBatch(id, timestamp, messages);
+                session.getAsyncRemote().sendBinary(ByteBuffer.wrap(frame), result -> complete(batch, result, true, frame.length));
+            } else {
+                List<String> messages = new ArrayList<>(batch.size());
+                for (OutboundMessage message : batch) {
+                    messages.add(message.frame.json());
+                }
+                String frame = EnvelopeCodec.encodeJsonBatch(id, timestamp, messages);
+                int bytes = WebSocketMetrics.utf8Length(frame);
+                session.getAsyncRemote().sendText(frame, result -> complete(batch, result, true, bytes));
+            }
+        } catch (RuntimeException e) {
+            complete(batch, new SendResult(e), true, 0);
+        }
+    }
+
+    /**
+     * 给每条消息加上序号写出，多条时合并为一个批量信封；写出失败的消息留在重传窗口中，接续时重传
+     * @param messages 本次新分配序号的消息，写出结果通知它们的回调，确认回调由投递流在客户端确认后执行
+     */
+    private void writeSequenced(List<DeliveryStream.Entry> entries, List<OutboundMessage> messages) {
+        if (!session.isOpen()) {
+            complete(messages, new SendResult(new IllegalStateException("会话 " + getId() + " 已关闭")), false, 0);
+            return;
+        }
+        if (entries.size() > 1) {
+            outboundBatcher.recordBatch(entries.size());
+        }
+        long timestamp = System.currentTimeMillis();
+        try {
+            if (protocol == WireProtocol.BINARY) {
+                List<ByteBuffer> sequenced = new ArrayList<>(entries.size());
+                for (DeliveryStream.Entry entry : entries) {
+                    sequenced.add(ByteBuffer.wrap(EnvelopeCodec.encodeBinarySequenced(entry.seq, timestamp, binaryOf(entry.frame))));
+                }
+                ByteBuffer frame = sequenced.size() == 1 ? sequenced.get(0)
+                        : ByteBuffer.wrap(EnvelopeCodec.encodeBinaryBatch(Envelope.nextId(), timestamp, sequenced));
+                int bytes = frame.remaining();
+                session.getAsyncRemote().sendBinary(frame, result -> complete(messages, result, false, bytes));
+            } else {
+                List<String> sequenced = new ArrayList<>(entries.size());
+                for (DeliveryStream.Entry entry : entries) {
+                    sequenced.add(EnvelopeCodec.encodeJsonSequenced(entry.seq, timestamp, entry.frame.json()));
+                }
+                String frame = sequenced.size() == 1 ? sequenced.get(0)
+                        : EnvelopeCodec.encodeJsonBatch(Envelope.nextId(), timestamp, sequenced);
+                int bytes = WebSocketMetrics.utf8Length(frame);
+                session.getAsyncRemote().sendText(frame, result -> complete(messages, result, false, bytes));
+            }
+        } catch (RuntimeException e) {
+            complete(messages, new SendResult(e), false, 0);
+        }
+    }
+
+    private void complete(OutboundMessage message, SendResult result) {
+        sending.set(false);
+        try {
+            if (result.isOK()) {
+                metrics.frameSent(frameBytes(message.frame));
+            }
+            recordMessage(message, result);
+            notifyResult(message, result, true);
+        } finally {
+            drain(false);
+        }
+    }
+
+    /**
+     * 一个帧写完，帧中的每条消息分别通知
+     * @param acknowledged 写出成功是否即视为确认，可靠投递的消息由客户端确认
+     * @param bytes        写出的帧字节数
+     */
+    private void complete(List<OutboundMessage> batch, SendResult result, boolean acknowledged, int bytes) {
+        sending.set(false);
+        try {
+            if (result.isOK()) {
+                metrics.frameSent(bytes);
+            }
+            for (OutboundMessage message : batch) {
+                recordMessage(message, result);
+                notifyResult(message, result, acknowledged);
+            }
+        } finally {
+            drain(false);
+        }
+    }
+
+    private void recordMessage(OutboundMessage message, SendResult result) {
+        if (result.isOK()) {
+            metrics.messageSent(System.nanoTime() - message.enqueuedNanos);
+        } else {
+            metrics.sendFailed(1);
+        }
+    }
+
+    /**
+     * 通知写出结果，未开启可靠投递的消息写出成功即执行确认回调
+     */
+    private static void notifyResult(OutboundMessage message, SendResult result, boolean acknowledged) {
+        if (message.callback != null) {
+            message.callback.onResult(result);
+        }
+        if (acknowledged && message.onAcked != null && result.isOK()) {
+            message.onAcked.run();
+        }
+    }
+
+    private void fail(OutboundMessage message, String reason) {
+        if (message.callback != null) {
+            message.callback.onResult(new SendResult(new IOException(reason)));
+        }
+    }
+
+    /**
+     * 待发送消息及其完成回调
+     */
+    private static final class OutboundMessage {
+        private final BroadcastFrame frame;
+        private final SendHandler callback;
+        private final Runnable onAcked;
+        //进入发送队列的时间（纳秒）
+        private final long enqueuedNanos = System.nanoTime();
+
+        private OutboundMessage(BroadcastFrame frame, SendHandler callback, Runnable onAcked) {
+            this.frame = frame;
+            this.callback = callback;
+            this.onAcked = onAcked;
+        }
+    }
+}
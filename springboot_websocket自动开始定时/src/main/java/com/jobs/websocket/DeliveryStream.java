@@ -0,0 +1,203 @@
+package com.jobs.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 可靠投递流
+ * 开启可靠投递的会话写出的每条消息按写出顺序分配递增的序号，写出后保存在重传窗口中，直到客户端累计确认；
+ * 窗口写满时会话暂停写出，消息留在发送队列中，由发送队列的溢出策略兜底
+ * 会话断开后投递流保留一段时间，客户端带着投递流 ID 和已收到的最大序号重连时接续同一个投递流，
+ * 先重传窗口中未确认的消息，再继续发送新消息
+ * 同一时刻只属于一个会话，只有持有者可以追加消息
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public final class DeliveryStream {
+
+    private final String id;
+
+    private final String username;
+
+    private final DeliveryTracker tracker;
+
+    //重传窗口，序号 seq 的消息存放在 seq % 窗口大小 的位置
+    private final Entry[] window;
+
+    //已累计确认的最大序号
+    private long ackedSeq;
+
+    //下一条消息的序号，从 1 开始
+    private long nextSeq = 1;
+
+    //接续后待重传的序号范围 [resendSeq, resendEnd)
+    private long resendSeq;
+
+    private long resendEnd;
+
+    //当前持有投递流的会话，断开后为 null
+    private ClientSession owner;
+
+    //断开后保留到的时间（毫秒时间戳）
+    private long retainUntil;
+
+    DeliveryStream(String id, String username, int windowSize, DeliveryTracker tracker) {
+        this.id = id;
+        this.username = username;
+        this.window = new Entry[windowSize];
+        this.tracker = tracker;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public synchronized long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    /**
+     * 已写出但尚未确认的消息数
+     */
+    public synchronized int inFlight() {
+        return (int) (nextSeq - 1 - ackedSeq);
+    }
+
+    /**
+     * 重传窗口是否还有空位
+     */
+    synchronized boolean hasRoom() {
+        return nextSeq - 1 - ackedSeq < window.length;
+    }
+
+    /**
+     * 是否有待重传的消息
+     */
+    synchronized boolean hasResend() {
+        return resendSeq < resendEnd;
+    }
+
+    /**
+     * 为即将写出的消息分配序号并放入重传窗口
+     * @param onAcked 客户端确认后执行，可以为 null
+     * @return 分配了序号的消息，会话已不持有投递流或窗口已满时返回 null
+     */
+    synchronized Entry append(ClientSession session, BroadcastFrame frame, Runnable onAcked) {
+        if (owner != session || !hasRoom()) {
+            return null;
+        }
+        Entry entry = new Entry(nextSeq++, frame, onAcked);
+        window[(int) (entry.seq % window.length)] = entry;
+        return entry;
+    }
+
+    /**
+     * 取出最多 limit 条待重传的消息
+     */
+    synchronized List<Entry> pollResend(int limit) {
+        List<Entry> entries = new ArrayList<>(limit);
+        while (resendSeq < resendEnd && entries.size() < limit) {
+            Entry entry = window[(int) (resendSeq % window.length)];
+            resendSeq++;
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            tracker.recordRedelivered(entries.size());
+        }
+        return entries;
+    }
+
+    /**
+     * 客户端累计确认，序号不大于 seq 的消息全部移出窗口
+     * @return 是否确认了新的消息
+     */
+    boolean ack(long seq) {
+        List<Entry> acked;
+        synchronized (this) {
+            if (seq <= ackedSeq) {
+                return false;
+            }
+            long upTo = Math.min(seq, nextSeq - 1);
+            if (upTo <= ackedSeq) {
+                return false;
+            }
+            acked = new ArrayList<>((int) (upTo - ackedSeq));
+            for (long s = ackedSeq + 1; s <= upTo; s++) {
+                int index = (int) (s % window.length);
+                if (window[index] != null) {
+                    acked.add(window[index]);
+                    window[index] = null;
+                }
+            }
+            ackedSeq = upTo;
+            resendSeq = Math.max(resendSeq, upTo + 1);
+        }
+        long now = System.currentTimeMillis();
+        for (Entry entry : acked) {
+            tracker.recordAcked(now - entry.frame.getEnvelope().getTimestamp());
+            if (entry.onAcked != null) {
+                entry.onAcked.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 会话接管投递流，窗口中未确认的消息在新消息之前重传
+     */
+    synchronized void attach(ClientSession session) {
+        owner = session;
+        resendSeq = ackedSeq + 1;
+        resendEnd = nextSeq;
+    }
+
+    /**
+     * 会话断开，投递流保留到 retainUntil，期间可以被新会话接续
+     * @return 会话是否持有该投递流
+     */
+    synchronized boolean detach(ClientSession session, long retainUntil) {
+        if (owner != session) {
+            return false;
+        }
+        owner = null;
+        this.retainUntil = retainUntil;
+        return true;
+    }
+
+    synchronized boolean isExpired(long now) {
+        return owner == null && retainUntil <= now;
+    }
+
+    /**
+     * 投递流过期，窗口中的消息不再投递
+     * @return 未确认的消息数
+     */
+    synchronized int discard() {
+        int discarded = inFlight();
+        for (int i = 0; i < window.length; i++) {
+            window[i] = null;
+        }
+        return discarded;
+    }
+
+    /**
+     * 重传窗口中的一条消息
+     */
+    static final class Entry {
+        final long seq;
+        final BroadcastFrame frame;
+        final Runnable onAcked;
+
+        private Entry(long seq, BroadcastFrame frame, Runnable onAcked) {
+            this.seq = seq;
+            this.frame = frame;
+            this.onAcked = onAcked;
+        }
+    }
+}
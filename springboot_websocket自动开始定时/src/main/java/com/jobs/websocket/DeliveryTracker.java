@@ -0,0 +1,166 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可靠投递管理
+ * 客户端连接时带上 resume 参数即开启可靠投递：参数为空时创建新的投递流，
+ * 为 投递流ID:已收到的最大序号 时接续断开前的投递流，找不到（已过期或属于其它用户）时创建新的投递流
+ * 会话断开后投递流保留 resume-timeout 毫秒，过期后窗口中未确认的消息不再投递
+ * 投递延迟（消息生成到客户端确认）和重传次数都在确认、重传时顺带统计
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+@Component
+public class DeliveryTracker {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //已断开、等待接续的投递流，key 是投递流 ID
+    private final ConcurrentHashMap<String, DeliveryStream> detached = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService expiryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delivery-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //创建的投递流数
+    private final LongAdder opened = new LongAdder();
+
+    //成功接续的投递流数
+    private final LongAdder resumed = new LongAdder();
+
+    //请求接续但投递流已不存在的次数
+    private final LongAdder resumeMisses = new LongAdder();
+
+    //客户端确认的消息数
+    private final LongAdder acked = new LongAdder();
+
+    //重传的消息数
+    private final LongAdder redelivered = new LongAdder();
+
+    //投递流过期时仍未确认的消息数
+    private final LongAdder expired = new LongAdder();
+
+    private final LongAdder latencyTotal = new LongAdder();
+
+    private final LongAccumulator latencyMax = new LongAccumulator(Math::max, 0);
+
+    @PostConstruct
+    public void start() {
+        long interval = Math.max(100, Math.min(1000, webSocketProperties.getDelivery().getResumeTimeout() / 2));
+        expiryExecutor.scheduleWithFixedDelay(this::expire, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为新连接的会话创建或接续投递流
+     * @param resume 连接参数 resume 的值，为空时创建新的投递流
+     */
+    public DeliveryStream open(String username, String resume) {
+        if (resume != null && !resume.isEmpty()) {
+            int separator = resume.lastIndexOf(':');
+            String streamId = separator > 0 ? resume.substring(0, separator) : resume;
+            DeliveryStream stream = detached.remove(streamId);
+            if (stream != null && !stream.getUsername().equals(username)) {
+                detached.put(streamId, stream);
+                stream = null;
+            }
+            if (stream != null) {
+                if (separator > 0) {
+                    try {
+                        //客户端已收到的消息视为已确认，只重传之后的消息
+                        stream.ack(Long.parseLong(resume.substring(separator + 1)));
+                    } catch (NumberFormatException e) {
+                        log.warn("用户 {} 接续投递流时携带的序号无法解析：{}", username, resume);
+                    }
+                }
+                resumed.increment();
+                log.info("用户 {} 接续投递流 {}，已确认序号 {}，待重传 {} 条", username, streamId, stream.getAckedSeq(), stream.inFlight());
+                return stream;
+            }
+            resumeMisses.increment();
+            log.info("用户 {} 请求接续的投递流 {} 已不存在，创建新的投递流", username, streamId);
+        }
+        opened.increment();
+        return new DeliveryStream(UUID.randomUUID().toString(), username, webSocketProperties.getDelivery().getWindow(), this);
+    }
+
+    /**
+     * 会话断开，保留其投递流等待接续
+     */
+    public void detach(ClientSession client) {
+        DeliveryStream stream = client.getDeliveryStream();
+        if (stream == null) {
+            return;
+        }
+        long retainUntil = System.currentTimeMillis() + webSocketProperties.getDelivery().getResumeTimeout();
+        if (stream.detach(client, retainUntil)) {
+            detached.put(stream.getId(), stream);
+        }
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (DeliveryStream stream : detached.values()) {
+            //只有自己从 detached 中移除了该投递流才清空窗口，检查过期后并发接续的投递流已被 open 取走，不能再清空
+            if (stream.isExpired(now) && detached.remove(stream.getId(), stream)) {
+                int discarded = stream.discard();
+                expired.add(discarded);
+                if (discarded > 0) {
+                    log.info("用户 {} 的投递流 {} 已过期，{} 条消息未确认", stream.getUsername(), stream.getId(), discarded);
+                }
+            }
+        }
+    }
+
+    void recordAcked(long latencyMillis) {
+        acked.increment();
+        latencyTotal.add(latencyMillis);
+        latencyMax.accumulate(latencyMillis);
+    }
+
+    void recordRedelivered(int count) {
+        redelivered.add(count);
+    }
+
+    /**
+     * 可靠投递统计
+     */
+    public Map<String, Object> getStats() {
+        long ackedCount = acked.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("opened", opened.sum());
+        stats.put("resumed", resumed.sum());
+        stats.put("resumeMisses", resumeMisses.sum());
+        stats.put("detached", detached.size());
+        stats.put("acked", ackedCount);
+        stats.put("redelivered", redelivered.sum());
+        stats.put("expired", expired.sum());
+        stats.put("averageLatencyMillis", ackedCount > 0 ? (double) latencyTotal.sum() / ackedCount : 0);
+        stats.put("maxLatencyMillis", latencyMax.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryExecutor.shutdownNow();
+    }
+}
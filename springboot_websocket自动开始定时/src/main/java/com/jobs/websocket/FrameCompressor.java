@@ -0,0 +1,124 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.EnvelopeCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * 信封级压缩
+ * 用于未协商 permessage-deflate 的 v1.binary 会话：内容达到阈值才压缩，压缩后不变小则按原文发送，
+ * 协商了 permessage-deflate 的会话由容器逐条压缩，不经过这里，阈值和压缩统计都不包含这些会话，
+ * 默认开启 permessage-deflate 时只有客户端不支持该扩展的会话才会用到信封级压缩
+ * 压缩结果缓存在广播帧上，一次广播只压缩一次，每条消息独立压缩（不保留上下文），可以被所有接收者共享
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class FrameCompressor {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    //每个线程复用一个 Deflater，避免每条消息分配本地内存
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(
+            () -> new Deflater(webSocketProperties.getCompression().getLevel(), true));
+
+    private final boolean cpuTimeSupported = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+
+    //压缩的消息数
+    private final LongAdder compressed = new LongAdder();
+
+    //低于阈值或压缩后不变小而按原文发送的消息数
+    private final LongAdder skipped = new LongAdder();
+
+    //被压缩消息的原始字节数与压缩后字节数
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    //压缩消耗的 CPU 时间（纳秒），JVM 不支持线程 CPU 时间时记录耗时
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /**
+     * 编码为二进制信封，内容达到阈值且压缩有收益时以压缩形式编码
+     */
+    public byte[] encode(Envelope envelope) {
+        byte[] payload = envelope.getPayload().getBytes(StandardCharsets.UTF_8);
+        if (payload.length < webSocketProperties.getCompression().getThreshold()) {
+            skipped.increment();
+            return EnvelopeCodec.encodeBinary(envelope, payload, false);
+        }
+        long start = cpuTime();
+        byte[] deflated = deflate(payload);
+        cpuNanos.add(cpuTime() - start);
+        if (deflated == null) {
+            skipped.increment();
+            return EnvelopeCodec.encodeBinary(envelope, payload, false);
+        }
+        compressed.increment();
+        bytesIn.add(payload.length);
+        bytesOut.add(deflated.length);
+        return EnvelopeCodec.encodeBinary(envelope, deflated, true);
+    }
+
+    /**
+     * 压缩内容，输出缓冲区与原文等长，写满仍未结束说明压缩没有收益
+     * @return 压缩结果，没有收益时返回 null
+     */
+    private byte[] deflate(byte[] payload) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] out = new byte[payload.length];
+        int length = 0;
+        while (!deflater.finished() && length < out.length) {
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return deflater.finished() && length < payload.length ? Arrays.copyOf(out, length) : null;
+    }
+
+    private long cpuTime() {
+        return cpuTimeSupported ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * 压缩统计，压缩率与 CPU 消耗只统计信封级压缩，permessage-deflate 会话只给出连接数
+     */
+    public Map<String, Object> getStats() {
+        WebSocketProperties.Compression compression = webSocketProperties.getCompression();
+        long in = bytesIn.sum();
+        long out = bytesOut.sum();
+        long count = compressed.sum();
+        long cpu = cpuNanos.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("perMessageDeflate", compression.isPerMessageDeflate());
+        stats.put("perMessageDeflateSessions", sessionRegistry.perMessageDeflateCount());
+        stats.put("threshold", compression.getThreshold());
+        stats.put("compressed", count);
+        stats.put("skipped", skipped.sum());
+        stats.put("bytesIn", in);
+        stats.put("bytesOut", out);
+        stats.put("compressionRatio", in > 0 ? (double) out / in : 1.0);
+        stats.put("cpuMillis", cpu / 1_000_000.0);
+        stats.put("cpuMicrosPerMessage", count > 0 ? cpu / 1000.0 / count : 0);
+        stats.put("cpuTimeSupported", cpuTimeSupported);
+        return stats;
+    }
+}
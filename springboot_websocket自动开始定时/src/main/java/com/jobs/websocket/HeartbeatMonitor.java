@@ -0,0 +1,124 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 心跳检测
+ * 一个线程按心跳间隔扫描一遍注册表，不为每个会话创建定时任务：
+ * 上一轮扫描之后没有收到任何数据（消息或 pong）的会话发送 ping，超过超时时间仍无数据的会话视为半开连接，
+ * 按连接关闭同样的方式注销后再异步关闭
+ * 正在写出消息的会话不发 ping，写出本身有超时，连接已断开时同样会因为收不到数据而超时
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+@Component
+public class HeartbeatMonitor {
+
+    private static final ByteBuffer PING_PAYLOAD = ByteBuffer.allocate(0);
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    private final ScheduledExecutorService sweepExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //发出的 ping 数
+    private final LongAdder pings = new LongAdder();
+
+    //因心跳超时被清理的会话数
+    private final LongAdder reaped = new LongAdder();
+
+    //上一轮扫描开始的时间（纳秒），只由扫描线程修改
+    private volatile long lastSweepStart = System.nanoTime();
+
+    //上一轮扫描的耗时（毫秒）
+    private volatile long lastSweepMillis;
+
+    @PostConstruct
+    public void start() {
+        WebSocketProperties.Heartbeat heartbeat = webSocketProperties.getHeartbeat();
+        if (!heartbeat.isEnabled()) {
+            return;
+        }
+        if (heartbeat.getTimeout() <= heartbeat.getInterval()) {
+            log.warn("心跳超时时间 {} 毫秒不大于心跳间隔 {} 毫秒，空闲连接可能在回复 pong 前被清理", heartbeat.getTimeout(), heartbeat.getInterval());
+        }
+        sweepExecutor.scheduleWithFixedDelay(this::sweep, heartbeat.getInterval(), heartbeat.getInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            long previousSweep = lastSweepStart;
+            long deadline = now - TimeUnit.MILLISECONDS.toNanos(webSocketProperties.getHeartbeat().getTimeout());
+            lastSweepStart = now;
+            sessionRegistry.forEach(client -> {
+                long lastActive = client.getLastActive();
+                if (lastActive - deadline < 0) {
+                    reaped.increment();
+                    log.warn("用户 {} 的连接 {} 超过心跳超时时间没有数据，清理该连接", client.getUsername(), client.getId());
+                    WebSocketServer.reap(client, new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "heartbeat timeout"));
+                } else if (lastActive - previousSweep < 0 && !client.isWriting()) {
+                    ping(client);
+                }
+            });
+            lastSweepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now);
+        } catch (RuntimeException e) {
+            log.error("心跳扫描失败: {}", e.getMessage());
+        }
+    }
+
+    private void ping(ClientSession client) {
+        if (!client.isOpen()) {
+            return;
+        }
+        try {
+            client.getSession().getAsyncRemote().sendPing(PING_PAYLOAD.duplicate());
+            pings.increment();
+        } catch (IOException | RuntimeException e) {
+            log.debug("向用户 {} 发送 ping 失败: {}", client.getUsername(), e.getMessage());
+        }
+    }
+
+    /**
+     * 心跳统计
+     */
+    public Map<String, Object> getStats() {
+        WebSocketProperties.Heartbeat heartbeat = webSocketProperties.getHeartbeat();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", heartbeat.isEnabled());
+        stats.put("interval", heartbeat.getInterval());
+        stats.put("timeout", heartbeat.getTimeout());
+        stats.put("pings", pings.sum());
+        stats.put("reaped", reaped.sum());
+        stats.put("lastSweepMillis", lastSweepMillis);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweepExecutor.shutdownNow();
+    }
+}
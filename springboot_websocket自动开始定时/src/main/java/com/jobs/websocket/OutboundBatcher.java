@@ -0,0 +1,88 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import com.jobs.protocol.WireProtocol;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发送攒批
+ * 开启后，会话空闲时收到的第一条消息等待一个攒批窗口再发送，窗口内到达的消息合并为一个批量信封一次写出，
+ * 上一批写出期间积压的消息在写完后直接合并发送，不再等待；只对使用信封格式（v1.binary、v1.json）的会话生效
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class OutboundBatcher {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //攒批窗口到期后触发发送，发送本身是异步的，一个线程足够
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbound-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //写出的批量消息数
+    private final LongAdder batches = new LongAdder();
+
+    //合并进批量消息的消息数
+    private final LongAdder batchedMessages = new LongAdder();
+
+    /**
+     * 指定传输格式的会话是否攒批发送
+     */
+    public boolean isEnabled(WireProtocol protocol) {
+        return webSocketProperties.getBatch().isEnabled() && protocol != WireProtocol.LEGACY;
+    }
+
+    public int getMaxMessages() {
+        return webSocketProperties.getBatch().getMaxMessages();
+    }
+
+    public int getMaxBytes() {
+        return webSocketProperties.getBatch().getMaxBytes();
+    }
+
+    /**
+     * 攒批窗口到期后执行发送
+     */
+    public ScheduledFuture<?> schedule(Runnable flush) {
+        return flushExecutor.schedule(flush, webSocketProperties.getBatch().getWindow(), TimeUnit.MILLISECONDS);
+    }
+
+    public void recordBatch(int size) {
+        batches.increment();
+        batchedMessages.add(size);
+    }
+
+    /**
+     * 攒批统计
+     */
+    public Map<String, Object> getStats() {
+        long batchCount = batches.sum();
+        long messageCount = batchedMessages.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", webSocketProperties.getBatch().isEnabled());
+        stats.put("batches", batchCount);
+        stats.put("batchedMessages", messageCount);
+        stats.put("averageBatchSize", batchCount > 0 ? (double) messageCount / batchCount : 0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+    }
+}
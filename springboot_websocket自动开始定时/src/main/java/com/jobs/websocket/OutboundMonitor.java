@@ -0,0 +1,131 @@
+package com.jobs.websocket;
+
+import com.jobs.concurrent.VirtualThreads;
+import com.jobs.config.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发送队列监控，统计队列深度、丢弃/合并的消息数以及被断开的慢客户端数，
+ * 并负责在独立线程中关闭慢客户端，避免关闭握手阻塞发送线程
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Slf4j
+@Component
+public class OutboundMonitor {
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    //因队列已满被丢弃的消息数
+    private final LongAdder dropped = new LongAdder();
+
+    //因队列已满被合并掉的消息数
+    private final LongAdder coalesced = new LongAdder();
+
+    //发出前被同一合并键的新消息替换掉的消息数
+    private final LongAdder superseded = new LongAdder();
+
+    //因消费过慢被断开的会话数
+    private final LongAdder evicted = new LongAdder();
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //执行关闭握手的线程，虚拟线程模式下每次关闭一个虚拟线程，一个被写阻塞的连接不会拖慢其它连接的关闭
+    private ExecutorService evictExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (webSocketProperties.isVirtualThreads() && VirtualThreads.isAvailable()) {
+            evictExecutor = VirtualThreads.newThreadPerTaskExecutor("connection-closer-");
+        } else {
+            evictExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "slow-consumer-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void recordDropped(int count) {
+        dropped.add(count);
+    }
+
+    public void recordCoalesced(int count) {
+        coalesced.add(count);
+    }
+
+    public void recordSuperseded() {
+        superseded.increment();
+    }
+
+    /**
+     * 异步关闭消费过慢的客户端，关闭后由 onClose 完成注销
+     */
+    public void evict(ClientSession client) {
+        evicted.increment();
+        log.warn("用户 {} 的发送队列已满，断开慢客户端", client.getUsername());
+        close(client, new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+    }
+
+    /**
+     * 异步关闭会话，关闭握手可能被写阻塞的连接拖住，不在调用方线程中进行
+     */
+    public void close(ClientSession client, CloseReason reason) {
+        evictExecutor.execute(() -> {
+            try {
+                client.getSession().close(reason);
+            } catch (IOException e) {
+                log.error("关闭用户 {} 的连接失败: {}", client.getUsername(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 获取发送队列统计信息
+     */
+    public Map<String, Object> getStats() {
+        long totalDepth = 0;
+        int maxDepth = 0;
+        String maxDepthUser = null;
+        int sessions = 0;
+        for (ClientSession client : sessionRegistry.getSessions()) {
+            int depth = client.getQueueDepth();
+            totalDepth += depth;
+            if (depth > maxDepth) {
+                maxDepth = depth;
+                maxDepthUser = client.getUsername();
+            }
+            sessions++;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sessions", sessions);
+        result.put("totalQueueDepth", totalDepth);
+        result.put("maxQueueDepth", maxDepth);
+        result.put("maxQueueDepthUser", maxDepthUser);
+        result.put("dropped", dropped.sum());
+        result.put("coalesced", coalesced.sum());
+        result.put("superseded", superseded.sum());
+        result.put("evicted", evicted.sum());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictExecutor.shutdown();
+    }
+}
@@ -0,0 +1,235 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.websocket.Session;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket 会话注册表
+ * 基于 ConcurrentHashMap 实现，容器线程的 onOpen/onClose 与定时任务线程的广播遍历可以并发进行，
+ * 广播遍历采用弱一致性迭代，不会抛出 ConcurrentModificationException
+ * 同一用户可以同时在多个设备上连接，连接数达到上限后按设备策略关闭最早的连接或拒绝新连接；
+ * 只有一个设备时直接存放该会话，多个设备时才存放数组，最常见的单设备情况不比只保留一个连接时多占内存
+ * 在线用户名列表通过版本化快照分页查询，用户上线、下线时只递增版本号，列表在被查询时才复制
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class SessionRegistry {
+
+    private static final ClientSession[] NO_SESSIONS = new ClientSession[0];
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    //存储 username 与该用户会话的对应关系，key 是 username，
+    //单设备时值为 ClientSession，多设备时为按连接先后排列的 ClientSession[]，数组只整体替换，不在原数组上修改
+    private final ConcurrentHashMap<String, Object> sessionMap = new ConcurrentHashMap<>();
+
+    //存储 Session 的 id 和 ClientSession 的对应关系，每个设备一项
+    private final ConcurrentHashMap<String, ClientSession> idSessionMap = new ConcurrentHashMap<>();
+
+    //在线用户名的版本化快照
+    private final UsernameIndex onlineIndex = new UsernameIndex(sessionMap.keySet());
+
+    //协商了 permessage-deflate 的连接数，随 idSessionMap 的增删更新
+    private final AtomicInteger perMessageDeflateCount = new AtomicInteger();
+
+    /**
+     * 注册用户会话，用户的连接数已达上限时按设备策略腾出位置
+     * @return 需要关闭的会话：EVICT_OLDEST 策略下为被挤掉的最早连接，REJECT_NEW 策略下为被拒绝的新连接，没有则返回 null；
+     * 返回的会话已从注册表中移除，不会再收到消息，关闭后的 onClose 也不会再次注销
+     */
+    public ClientSession register(ClientSession client) {
+        WebSocketProperties.Devices devices = webSocketProperties.getDevices();
+        int maxDevices = Math.max(1, devices.getMaxDevices());
+        ClientSession[] displaced = new ClientSession[1];
+        boolean[] added = new boolean[1];
+        idSessionMap.put(client.getId(), client);
+        deviceAdded(client);
+        sessionMap.compute(client.getUsername(), (username, current) -> {
+            ClientSession[] sessions = unpack(current);
+            if (sessions.length < maxDevices) {
+                added[0] = current == null;
+                ClientSession[] next = Arrays.copyOf(sessions, sessions.length + 1);
+                next[sessions.length] = client;
+                return pack(next);
+            }
+            if (devices.getPolicy() == DevicePolicy.REJECT_NEW) {
+                displaced[0] = client;
+                return current;
+            }
+            //挤掉最早的连接
+            displaced[0] = sessions[0];
+            ClientSession[] next = Arrays.copyOfRange(sessions, 1, sessions.length + 1);
+            next[sessions.length - 1] = client;
+            return pack(next);
+        });
+        //映射更新完成后再递增版本号，重建快照时一定能看到新用户
+        if (added[0]) {
+            onlineIndex.changed();
+        }
+        if (displaced[0] != null) {
+            // 只移除仍指向该会话的映射
+            if (idSessionMap.remove(displaced[0].getId(), displaced[0])) {
+                deviceRemoved(displaced[0]);
+            }
+        }
+        return displaced[0];
+    }
+
+    /**
+     * 注销会话，只从该用户的会话中移除这一个设备，不影响同一用户的其它连接
+     * @return 被注销的会话，会话已被挤掉、被拒绝或不存在时返回 null
+     */
+    public ClientSession unregister(Session session) {
+        ClientSession client = idSessionMap.remove(session.getId());
+        if (client != null) {
+            deviceRemoved(client);
+            boolean[] removed = new boolean[1];
+            sessionMap.computeIfPresent(client.getUsername(), (username, current) -> {
+                Object next = pack(remove(unpack(current), client));
+                removed[0] = next == null;
+                return next;
+            });
+            if (removed[0]) {
+                onlineIndex.changed();
+            }
+        }
+        return client;
+    }
+
+    private static ClientSession[] unpack(Object value) {
+        if (value == null) {
+            return NO_SESSIONS;
+        }
+        if (value instanceof ClientSession) {
+            return new ClientSession[]{(ClientSession) value};
+        }
+        return (ClientSession[]) value;
+    }
+
+    //没有会话时返回 null，从映射中移除该用户；单个会话时不使用数组
+    private static Object pack(ClientSession[] sessions) {
+        if (sessions.length == 0) {
+            return null;
+        }
+        return sessions.length == 1 ? sessions[0] : sessions;
+    }
+
+    private static ClientSession[] remove(ClientSession[] sessions, ClientSession client) {
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i] == client) {
+                ClientSession[] next = new ClientSession[sessions.length - 1];
+                System.arraycopy(sessions, 0, next, 0, i);
+                System.arraycopy(sessions, i + 1, next, i, sessions.length - i - 1);
+                return next;
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * 根据 Socket Session 获取客户端会话
+     */
+    public ClientSession get(Session session) {
+        return idSessionMap.get(session.getId());
+    }
+
+    /**
+     * 根据会话获取用户名
+     */
+    public String getUsername(Session session) {
+        ClientSession client = idSessionMap.get(session.getId());
+        return client != null ? client.getUsername() : null;
+    }
+
+    /**
+     * 获取用户最近建立的连接，用户不在线时返回 null
+     */
+    public ClientSession getSession(String username) {
+        Object value = sessionMap.get(username);
+        if (value == null || value instanceof ClientSession) {
+            return (ClientSession) value;
+        }
+        ClientSession[] sessions = (ClientSession[]) value;
+        return sessions[sessions.length - 1];
+    }
+
+    /**
+     * 获取用户在所有设备上的连接，按连接先后排列，用户不在线时返回空数组
+     */
+    public ClientSession[] getDevices(String username) {
+        return unpack(sessionMap.get(username));
+    }
+
+    private void deviceAdded(ClientSession client) {
+        if (client.isPerMessageDeflate()) {
+            perMessageDeflateCount.incrementAndGet();
+        }
+    }
+
+    private void deviceRemoved(ClientSession client) {
+        if (client.isPerMessageDeflate()) {
+            perMessageDeflateCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 用户是否在线
+     */
+    public boolean isOnline(String username) {
+        return sessionMap.containsKey(username);
+    }
+
+    /**
+     * 在线用户数量
+     */
+    public int size() {
+        return sessionMap.size();
+    }
+
+    /**
+     * 在线连接数量，同一用户的多个设备分别计数
+     */
+    public int deviceCount() {
+        return idSessionMap.size();
+    }
+
+    /**
+     * 协商了 permessage-deflate 的连接数量
+     */
+    public int perMessageDeflateCount() {
+        return perMessageDeflateCount.get();
+    }
+
+    /**
+     * 按用户名顺序分页获取在线用户名，在线用户没有变化时重复查询复用同一个快照
+     * @param cursor       上一页的 nextCursor，为空时从头开始
+     * @param knownVersion 调用方已有列表的版本号，没有变化时不返回用户名，可以为 null
+     */
+    public UserPage getUsernames(String cursor, int limit, Long knownVersion) {
+        return onlineIndex.page(cursor, limit, knownVersion);
+    }
+
+    /**
+     * 所有在线会话的弱一致性视图，同一用户的每个设备各一项
+     */
+    public Collection<ClientSession> getSessions() {
+        return idSessionMap.values();
+    }
+
+    /**
+     * 弱一致性遍历所有在线会话，遍历过程中允许其它线程并发注册/注销
+     */
+    public void forEach(Consumer<ClientSession> action) {
+        idSessionMap.values().forEach(action);
+    }
+}
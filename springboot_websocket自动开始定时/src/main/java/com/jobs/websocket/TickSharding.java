@@ -0,0 +1,63 @@
+package com.jobs.websocket;
+
+import com.jobs.config.WebSocketProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 定时推送分片
+ * 按用户名哈希把用户分到 N 个时间片，同一次定时推送按时间片依次发出并叠加随机抖动，
+ * 把整点或固定周期的瞬时推送洪峰摊平到一个时间窗口内
+ * 同一用户每次都落在同一个时间片，推送间隔保持稳定
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+@Component
+public class TickSharding {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    /**
+     * 是否开启分片推送
+     */
+    public boolean isEnabled() {
+        WebSocketProperties.Sharding sharding = webSocketProperties.getSharding();
+        return sharding.isEnabled() && sharding.getSlots() > 1;
+    }
+
+    /**
+     * 时间片数量
+     */
+    public int getSlots() {
+        return Math.max(1, webSocketProperties.getSharding().getSlots());
+    }
+
+    /**
+     * 用户所在的时间片
+     */
+    public int slotOf(String username) {
+        return (username.hashCode() & Integer.MAX_VALUE) % getSlots();
+    }
+
+    /**
+     * 时间片相对推送时刻的延迟（毫秒），包含随机抖动
+     */
+    public long slotDelayMillis(int slot) {
+        WebSocketProperties.Sharding sharding = webSocketProperties.getSharding();
+        long delay = sharding.getWindow() * slot / getSlots();
+        if (sharding.getJitter() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(sharding.getJitter() + 1);
+        }
+        return delay;
+    }
+
+    /**
+     * 用户相对推送时刻的延迟（毫秒），未开启分片时为 0
+     */
+    public long delayMillis(String username) {
+        return isEnabled() ? slotDelayMillis(slotOf(username)) : 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.jobs.websocket;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 用户名列表的一页
+ * 列表按用户名排序，nextCursor 为本页最后一个用户名，作为下一页的 cursor 参数，没有下一页时为 null
+ * 查询第一页时调用方带上的版本号与当前版本一致，changed 为 false，不返回用户名；翻页请求总是返回用户名
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+public class UserPage {
+
+    //列表的版本号，成员变化后递增
+    private final long version;
+
+    //版本号与调用方已有的一致时为 false
+    private final boolean changed;
+
+    //列表中的用户总数
+    private final int total;
+
+    //本页的用户名，是快照数组上的视图，不复制
+    private final List<String> users;
+
+    private final String nextCursor;
+
+    UserPage(long version, boolean changed, int total, List<String> users, String nextCursor) {
+        this.version = version;
+        this.changed = changed;
+        this.total = total;
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    static UserPage unchanged(long version, int total) {
+        return new UserPage(version, false, total, Collections.emptyList(), null);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,195 @@
+package com.jobs.offline;
+
+import com.jobs.protocol.Envelope;
+import com.jobs.protocol.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 离线消息存储：信箱顺序、确认、换段以及重启后扫描段文件恢复
+ * @Author: xulai
+ * @Date: 2025/1/27
+ */
+class MappedOfflineStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    //清理间隔设得足够长，测试期间不会触发后台清理
+    private static final long COMPACT_INTERVAL = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    private MappedOfflineStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void pendingKeepsAppendOrderPerUser() {
+        store = open(SEGMENT_SIZE);
+        for (int i = 0; i < 10; i++) {
+            store.append("alice", message("a" + i));
+            store.append("bob", message("b" + i));
+        }
+        assertEquals(payloads("a", 0, 10), payloadsOf(store.pending("alice")));
+        assertEquals(payloads("b", 0, 10), payloadsOf(store.pending("bob")));
+        assertTrue(store.pending("carol").isEmpty());
+    }
+
+    @Test
+    void ackRemovesEverythingUpToOffset() {
+        store = open(SEGMENT_SIZE);
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            offsets.add(store.append("alice", message("a" + i)));
+        }
+        store.ack("alice", offsets.get(3));
+        //确认后继续追加，信箱头部空出的位置被复用，顺序不变
+        for (int i = 6; i < 12; i++) {
+            store.append("alice", message("a" + i));
+        }
+        assertEquals(payloads("a", 4, 12), payloadsOf(store.pending("alice")));
+
+        //重复确认或确认更早的偏移量不产生变化
+        store.ack("alice", offsets.get(1));
+        assertEquals(8, store.pending("alice").size());
+        assertEquals(4L, store.getStats().get("acked"));
+    }
+
+    @Test
+    void recoversMailboxesAndAcksAfterReopen() {
+        store = open(SEGMENT_SIZE);
+        long first = store.append("alice", message("a0"));
+        store.append("alice", message("a1"));
+        store.append("bob", message("b0"));
+        long bob = store.append("bob", message("b1"));
+        store.ack("alice", first);
+        store.ack("bob", bob);
+        store.close();
+
+        store = open(SEGMENT_SIZE);
+        assertEquals(payloads("a", 1, 2), payloadsOf(store.pending("alice")));
+        assertTrue(store.pending("bob").isEmpty());
+        assertEquals(1, store.getStats().get("users"));
+    }
+
+    @Test
+    void rollsToNewSegmentsAndRecoversAcrossThem() throws IOException {
+        store = open(256);
+        for (int i = 0; i < 20; i++) {
+            store.append("alice", message("message-" + i));
+        }
+        int segments = (Integer) store.getStats().get("segments");
+        assertTrue(segments > 1, "20 条消息应分布在多个段中，实际段数 " + segments);
+        assertEquals(payloads("message-", 0, 20), payloadsOf(store.pending("alice")));
+        store.close();
+
+        assertEquals(segments, segmentFiles().size());
+        store = open(256);
+        assertEquals(payloads("message-", 0, 20), payloadsOf(store.pending("alice")));
+    }
+
+    @Test
+    void ignoresTornRecordAndOverwritesIt() throws IOException {
+        store = open(SEGMENT_SIZE);
+        store.append("alice", message("a0"));
+        long last = store.append("alice", message("a1"));
+        store.close();
+        store = null;
+
+        //模拟写记录时进程崩溃：记录内容已写入，长度还是 0
+        Path segment = segmentFiles().get(0);
+        int end;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, last);
+            end = (int) last + 4 + length.getInt(0);
+            ByteBuffer torn = ByteBuffer.allocate(32);
+            torn.putInt(0).put((byte) 1).putLong(System.currentTimeMillis())
+                    .putShort((short) 5).put("alice".getBytes(StandardCharsets.UTF_8));
+            torn.flip();
+            channel.write(torn, end);
+        }
+
+        store = open(SEGMENT_SIZE);
+        assertEquals(payloads("a", 0, 2), payloadsOf(store.pending("alice")));
+        //新消息从写了一半的记录处开始写，覆盖残留的数据
+        assertEquals(end, store.append("alice", message("a2")));
+        store.close();
+
+        store = open(SEGMENT_SIZE);
+        assertEquals(payloads("a", 0, 3), payloadsOf(store.pending("alice")));
+    }
+
+    @Test
+    void stopsScanAtLengthBeyondSegment() throws IOException {
+        store = open(SEGMENT_SIZE);
+        long offset = store.append("alice", message("a0"));
+        store.close();
+        store = null;
+
+        //长度超出段文件的记录视为损坏，扫描在此停止
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, offset);
+            int end = (int) offset + 4 + length.getInt(0);
+            channel.write((ByteBuffer) ByteBuffer.allocate(4).putInt(SEGMENT_SIZE).flip(), end);
+        }
+
+        store = open(SEGMENT_SIZE);
+        assertEquals(payloads("a", 0, 1), payloadsOf(store.pending("alice")));
+    }
+
+    private MappedOfflineStore open(int segmentSize) {
+        return new MappedOfflineStore(directory, segmentSize, 3_600_000, Long.MAX_VALUE, COMPACT_INTERVAL);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static Envelope message(String payload) {
+        return Envelope.of(MessageType.DIRECT, payload);
+    }
+
+    private static List<String> payloads(String prefix, int from, int to) {
+        List<String> payloads = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            payloads.add(prefix + i);
+        }
+        return payloads;
+    }
+
+    private static List<String> payloadsOf(List<StoredMessage> messages) {
+        List<String> payloads = new ArrayList<>();
+        for (StoredMessage message : messages) {
+            payloads.add(message.getEnvelope().getPayload());
+        }
+        return payloads;
+    }
+}